@@ -1,11 +1,17 @@
 package com.daftshady.superandroidkit.database;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.util.Log;
 
 /**
@@ -18,8 +24,22 @@ public abstract class AbstractDbHelper extends SQLiteOpenHelper {
 	
 	private final String TAG = "AbstractDbHelper";
 	
+	private static final int AUTO_VACUUM_INCREMENTAL = 2;
+	
 	private final String mDatabaseName;
 	
+	/*
+	 * Guards `mBackfillThread`. The helper itself is locked while the
+	 * database is opened, so it is not used.
+	 */
+	private final Object mBackfillLock = new Object();
+	
+	private Thread mBackfillThread;
+	
+	private volatile boolean mWriteAheadLogging;
+	
+	private volatile boolean mIncrementalVacuum;
+	
 	public AbstractDbHelper(Context context, String dbName) {
 		this(context, dbName, 1);
 	}
@@ -34,6 +54,96 @@ public abstract class AbstractDbHelper extends SQLiteOpenHelper {
 	 */
 	protected abstract List<String> getTableCreationQuerys();
 	
+	/*
+	 * Should return list of indexes, created after tables. Indexes are
+	 * also created on upgrade, so that indexes added in a new version are
+	 * created on existing databases.
+	 */
+	protected List<DbIndex> getIndexes() {
+		return Collections.emptyList();
+	}
+	
+	/*
+	 * Should return full-text indexes of tables, created after tables and
+	 * on upgrade like indexes.
+	 */
+	protected List<FtsTable> getFullTextTables() {
+		return Collections.emptyList();
+	}
+	
+	/*
+	 * Should return migrations of every database version after 1. On
+	 * upgrade, migrations of versions after the old version are applied in
+	 * version order, and their backfills run in the background after the
+	 * database is opened.
+	 */
+	protected List<Migration> getMigrations() {
+		return Collections.emptyList();
+	}
+	
+	/*
+	 * Called on the backfill thread when pending backfills finished, or
+	 * stopped by an error if `completed` is false.
+	 */
+	protected void onBackfillsFinished(boolean completed) {
+	}
+	
+	/**
+	 * Returns true while backfills are running in the background.
+	 */
+	public boolean isBackfilling() {
+		synchronized (mBackfillLock) {
+			return mBackfillThread != null && mBackfillThread.isAlive();
+		}
+	}
+	
+	/**
+	 * Enables write-ahead logging, which concurrent `DbManager` sessions
+	 * rely on. Journal mode can only be switched while no connection is in
+	 * use, so it is applied when the database is opened, before any
+	 * connection is handed out. Should be called before the first open.
+	 * Requires API 11, ignored on lower versions.
+	 */
+	public void setWriteAheadLogging(boolean enabled) {
+		mWriteAheadLogging = enabled;
+	}
+	
+	public boolean isWriteAheadLogging() {
+		return mWriteAheadLogging;
+	}
+	
+	/**
+	 * Sets `auto_vacuum` of the database to INCREMENTAL, so that
+	 * `DbMaintenance` can return free pages to the file system. The mode can
+	 * only be changed before tables are created or by a VACUUM, so a
+	 * database created or opened without it is vacuumed once on the next
+	 * writable open. Should be called before the first open.
+	 */
+	public void setIncrementalVacuum(boolean enabled) {
+		mIncrementalVacuum = enabled;
+	}
+	
+	public boolean isIncrementalVacuum() {
+		return mIncrementalVacuum;
+	}
+	
+	/**
+	 * Applied before `onCreate`, so that tables of a new database are
+	 * created in incremental vacuum mode.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	@Override
+	public void onConfigure(SQLiteDatabase db) {
+		super.onConfigure(db);
+		if (db.isReadOnly())
+			return;
+		// Vacuumed before switching to WAL, which keeps the mode unchanged.
+		if (mIncrementalVacuum)
+			enableIncrementalVacuum(db);
+		if (mWriteAheadLogging)
+			db.enableWriteAheadLogging();
+	}
+	
 	@Override
 	public void onCreate(SQLiteDatabase db) {
 		Log.d(TAG, "Creating tables");
@@ -42,6 +152,8 @@ public abstract class AbstractDbHelper extends SQLiteOpenHelper {
 			for (String creationQuery : getTableCreationQuerys()) {
 					db.execSQL(creationQuery);
 			}
+			createIndexes(db);
+			db.execSQL(BackfillRunner.CREATION_QUERY);
 			success = true;
 		} catch (SQLException e) {
 				Log.e(TAG, "Table creation failed : " + e.getMessage(), e);
@@ -51,10 +163,90 @@ public abstract class AbstractDbHelper extends SQLiteOpenHelper {
 	}
 
 	/**
-	 * Database versioning is not supported in AbstractDbHelper
+	 * Applies migrations of versions in (oldVersion, newVersion] and
+	 * records their backfills. Migration failure is thrown so that the
+	 * upgrade is rolled back and retried on next open.
+	 * Indexes missing from the database are created afterwards.
+	 */
+	@Override
+	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		db.execSQL(BackfillRunner.CREATION_QUERY);
+		for (Migration migration : getSortedMigrations()) {
+			int version = migration.getVersion();
+			if (version <= oldVersion || version > newVersion)
+				continue;
+			Log.d(TAG, "Migrating to version " + version);
+			migration.migrate(db);
+			BackfillRunner.schedule(db, migration);
+		}
+		try {
+			createIndexes(db);
+		} catch (SQLException e) {
+			Log.e(TAG, "Index creation failed : " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Starts pending backfills in the background.
 	 */
 	@Override
-	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {}
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	public void onOpen(SQLiteDatabase db) {
+		super.onOpen(db);
+		// onConfigure is not called before API 16.
+		if (!db.isReadOnly() && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+			if (mIncrementalVacuum)
+				enableIncrementalVacuum(db);
+			if (mWriteAheadLogging 
+					&& Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+				db.enableWriteAheadLogging();
+		}
+		if (BackfillRunner.getPending(db).isEmpty())
+			return;
+		synchronized (mBackfillLock) {
+			if (isBackfilling())
+				return;
+			mBackfillThread = new Thread(
+					new BackfillRunner(this, getMigrations()), "Backfill");
+			mBackfillThread.setPriority(Thread.MIN_PRIORITY);
+			mBackfillThread.start();
+		}
+	}
+	
+	/*
+	 * Sets the mode and rebuilds the file with VACUUM if it is not in the
+	 * mode yet. Outside of transactions, as VACUUM can't run in one.
+	 */
+	private void enableIncrementalVacuum(SQLiteDatabase db) {
+		if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) 
+				== AUTO_VACUUM_INCREMENTAL)
+			return;
+		try {
+			db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+			db.execSQL("VACUUM");
+		} catch (SQLException e) {
+			Log.e(TAG, "Enabling incremental vacuum failed : " + e.getMessage(), e);
+		}
+	}
+	
+	private List<Migration> getSortedMigrations() {
+		List<Migration> migrations = new ArrayList<Migration>(getMigrations());
+		Collections.sort(migrations, new Comparator<Migration>() {
+			@Override
+			public int compare(Migration lhs, Migration rhs) {
+				return lhs.getVersion() < rhs.getVersion() ? -1 : 
+					(lhs.getVersion() == rhs.getVersion() ? 0 : 1);
+			}
+		});
+		return migrations;
+	}
+	
+	private void createIndexes(SQLiteDatabase db) {
+		for (DbIndex index : getIndexes())
+			db.execSQL(index.toCreationQuery());
+		for (FtsTable ftsTable : getFullTextTables())
+			ftsTable.create(db);
+	}
 	
 	public String getDatabaseName(){
 		return mDatabaseName;
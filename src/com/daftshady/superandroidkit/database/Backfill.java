@@ -0,0 +1,40 @@
+package com.daftshady.superandroidkit.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Backfill
+ * Data rewrite of a `Migration` run in batches on a background thread.
+ * Each batch commits together with its checkpoint, so a backfill stopped
+ * by process death resumes from the last committed batch on next open.
+ * Batches should be idempotent from their checkpoint, e.g. copying rows
+ * of rowid greater than checkpoint and returning the last copied rowid.
+ *
+ */
+public abstract class Backfill {
+
+	private final String mName;
+
+	/**
+	 * @param name
+	 * 		Unique name of the backfill, used to store its checkpoint.
+	 */
+	public Backfill(String name) {
+		if (name == null)
+			throw new IllegalArgumentException("Backfill should have name");
+		mName = name;
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	/**
+	 * Runs a batch inside a transaction.
+	 * @param checkpoint
+	 * 		Checkpoint returned by previous batch, or null for first batch.
+	 * @return
+	 * 		Checkpoint of this batch, or null if backfill is finished.
+	 */
+	public abstract String runBatch(SQLiteDatabase db, String checkpoint);
+}
@@ -0,0 +1,147 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * BackfillRunner
+ * Runs pending backfills of `AbstractDbHelper` in order, on its own
+ * `DbManager` session. Pending backfills and their checkpoints are kept in
+ * `migration_backfills` table, written in the same transaction as each
+ * batch. A run stopped by an error or by process death is resumed on next
+ * open of the database.
+ *
+ */
+class BackfillRunner implements Runnable {
+
+	private static final String TAG = "BackfillRunner";
+
+	static final String TABLE_NAME = "migration_backfills";
+
+	static final String CREATION_QUERY = "CREATE TABLE IF NOT EXISTS " 
+			+ TABLE_NAME + " (name TEXT PRIMARY KEY, version INTEGER NOT NULL, "
+			+ "checkpoint TEXT, done INTEGER NOT NULL DEFAULT 0)";
+
+	private final AbstractDbHelper mHelper;
+
+	private final Map<String, Backfill> mBackfills;
+
+	BackfillRunner(AbstractDbHelper helper, List<Migration> migrations) {
+		mHelper = helper;
+		mBackfills = new HashMap<String, Backfill>();
+		for (Migration migration : migrations) {
+			for (Backfill backfill : migration.getBackfills())
+				mBackfills.put(backfill.getName(), backfill);
+		}
+	}
+
+	/**
+	 * Records backfills of `migration` as pending. Should be called inside
+	 * the upgrade transaction.
+	 */
+	static void schedule(SQLiteDatabase db, Migration migration) {
+		for (Backfill backfill : migration.getBackfills()) {
+			ContentValues values = new ContentValues(3);
+			values.put("name", backfill.getName());
+			values.put("version", migration.getVersion());
+			values.put("done", 0);
+			db.insertWithOnConflict(TABLE_NAME, null, values,
+					SQLiteDatabase.CONFLICT_IGNORE);
+		}
+	}
+
+	/**
+	 * Returns names of pending backfills in the order they should run.
+	 */
+	static List<String> getPending(SQLiteDatabase db) {
+		List<String> names = new ArrayList<String>();
+		Cursor cursor;
+		try {
+			cursor = db.query(TABLE_NAME, new String[] {"name"}, "done = 0",
+					null, null, null, "version, rowid");
+		} catch (SQLException e) {
+			// Database created before migrations were supported.
+			return names;
+		}
+		try {
+			while (cursor.moveToNext())
+				names.add(cursor.getString(0));
+		} finally {
+			cursor.close();
+		}
+		return names;
+	}
+
+	@Override
+	public void run() {
+		DbManager manager = new DbManager(mHelper);
+		boolean completed = false;
+		SQLiteDatabase db = null;
+		try {
+			db = manager.open(DbManager.FLAG_OPEN_WRITABLE_DATABASE);
+			for (String name : getPending(db)) {
+				Backfill backfill = mBackfills.get(name);
+				if (backfill == null) {
+					// Marked done so that it doesn't start the runner again.
+					Log.w(TAG, "Backfill " + name + " is not declared, dropped");
+					ContentValues values = new ContentValues(1);
+					values.put("done", 1);
+					db.update(TABLE_NAME, values, "name = ?", new String[] {name});
+					continue;
+				}
+				run(manager, db, backfill);
+			}
+			completed = true;
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Backfill stopped, resumed on next open : " 
+					+ e.getMessage(), e);
+		} finally {
+			// The database stays open for the application.
+			if (db != null)
+				manager.release();
+			mHelper.onBackfillsFinished(completed);
+		}
+	}
+
+	private void run(DbManager manager, SQLiteDatabase db, Backfill backfill) {
+		String[] whereArgs = new String[] {backfill.getName()};
+		String checkpoint = null;
+		Cursor cursor = db.query(TABLE_NAME, new String[] {"checkpoint"},
+				"name = ?", whereArgs, null, null, null);
+		try {
+			if (cursor.moveToFirst())
+				checkpoint = cursor.getString(0);
+		} finally {
+			cursor.close();
+		}
+
+		long start = System.currentTimeMillis();
+		int batches = 0;
+		boolean done = false;
+		while (!done) {
+			manager.beginTransaction();
+			try {
+				checkpoint = backfill.runBatch(db, checkpoint);
+				done = checkpoint == null;
+				ContentValues values = new ContentValues(2);
+				values.put("checkpoint", checkpoint);
+				values.put("done", done ? 1 : 0);
+				db.update(TABLE_NAME, values, "name = ?", whereArgs);
+				db.setTransactionSuccessful();
+			} finally {
+				manager.endTransaction();
+			}
+			batches++;
+		}
+		Log.d(TAG, "Backfill " + backfill.getName() + " finished in " + batches 
+				+ " batches, " + (System.currentTimeMillis() - start) + "ms");
+	}
+}
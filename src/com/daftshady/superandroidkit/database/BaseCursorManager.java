@@ -1,134 +1,242 @@
 package com.daftshady.superandroidkit.database;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import android.annotation.SuppressLint;
 import android.database.Cursor;
 
 import com.daftshady.superandroidkit.utils.DateUtils;
-import com.daftshady.superandroidkit.utils.StringUtils;
 
 public class BaseCursorManager {
 
 	private Cursor mCursor;
 
+	private boolean mStrict = false;
+
+	private MappingPlan<?> mBoundPlan;
+
+	private int[] mBoundIndexes;
+
+	private boolean mBoundComplete;
+
+	private IdentityMap mIdentityMap;
+
+	private Set<String> mIdentityTables;
+
+	private long mIdentityGeneration;
+
+	private boolean mParallel = false;
+
 	public BaseCursorManager(Cursor cursor) {
 		mCursor = cursor;
 		if (mCursor == null)
 			throw new IllegalArgumentException("Should provide valid cursor");
 	}
 
+	/**
+	 * Returns names of the columns mapped into `klass`, to be used as
+	 * projection of queries so that unmapped columns are never loaded.
+	 */
+	public static String[] getProjection(Class<?> klass) {
+		return MappingPlan.of(klass).getColumnNames().clone();
+	}
+
+	/**
+	 * If strict, mapping fails when a mapped column is missing from the
+	 * cursor. Otherwise missing columns are skipped and their fields keep
+	 * default values.
+	 */
+	public void setStrict(boolean strict) {
+		mStrict = strict;
+		mBoundPlan = null;
+	}
+
+	/**
+	 * Maps rows through `identityMap`, returning cached instances of rows
+	 * already mapped. Null disables it.
+	 */
+	public void setIdentityMap(IdentityMap identityMap) {
+		mIdentityMap = identityMap;
+		mIdentityTables = null;
+	}
+
+	/*
+	 * Maps rows through `identityMap`, caching new models only if none of
+	 * `tables` was evicted since `generation`.
+	 */
+	void setIdentityMap(IdentityMap identityMap, Set<String> tables, long generation) {
+		mIdentityMap = identityMap;
+		mIdentityTables = tables;
+		mIdentityGeneration = generation;
+	}
+
+	/*
+	 * Caches `model`, guarded by the generation of the read if known.
+	 */
+	<T> void cacheModel(IdentityMap identityMap, Class<T> klass, Object key, T model) {
+		if (mIdentityTables != null)
+			identityMap.put(klass, key, model, mIdentityTables, mIdentityGeneration);
+		else
+			identityMap.put(klass, key, model);
+	}
+
+	/**
+	 * If true, `retreiveData` maps results of at least
+	 * `ParallelMapping.THRESHOLD` rows on worker threads. Models with a
+	 * `RowMapper` are always mapped on the calling thread.
+	 */
+	public void setParallel(boolean parallel) {
+		mParallel = parallel;
+	}
+
 	protected <T> T createModel(Class<T> klass) {
-		T model = null;
+		MappingPlan<T> plan = MappingPlan.of(klass);
+		return mapRow(plan, resolveColumnIndexes(plan), null);
+	}
 
-		try {
-			model = klass.newInstance();
-		} catch (Exception e) {
-			throw new IllegalArgumentException(
-					"DbModel doesn't have default constructor");
-		}
+	/*
+	 * Column indexes are resolved once per cursor and model class.
+	 */
+	int[] resolveColumnIndexes(MappingPlan<?> plan) {
+		if (plan == mBoundPlan)
+			return mBoundIndexes;
 
-		try {
-			DbColumn[] columns = (DbColumn[]) klass.getMethod("getColumns",
-					null).invoke(model, null);
-			for (DbColumn column : columns) {
-				String columnName = StringUtils.toLowerCamelCase(column
-						.getName());
-				try {
-					Field field = klass.getDeclaredField(columnName);
-					String setMethodName = "set"
-							+ StringUtils.toCamelCase(column.getName());
-					try {
-						Method setMethod = klass.getMethod(setMethodName,
-								field.getType());
-						setMethod.invoke(model, getValue(column));
-					} catch (NoSuchMethodException e) {
-						field.setAccessible(true);
-						field.set(model, field.getType().cast(getValue(column)));
-					}
-				} catch (NoSuchFieldException e) {
-					// skip undeclared field
-					continue;
-				}
+		int[] columnIndexes = plan.getColumnIndexes(mCursor);
+		if (mStrict) {
+			String[] columnNames = plan.getColumnNames();
+			for (int i = 0; i < columnIndexes.length; i++) {
+				if (columnIndexes[i] < 0)
+					throw new IllegalArgumentException(
+							"Column " + columnNames[i] + " is not in cursor");
 			}
-		} catch (IllegalAccessException e) {
-			throw new IllegalArgumentException("Cannot access to method!");
-		} catch (InvocationTargetException e) {
-			throw new IllegalArgumentException(
-					"Method param type does not match!");
-		} catch (NoSuchMethodException e) {
-			throw new IllegalArgumentException(
-					"Model must be extended from BaseDbModel.");
 		}
+		mBoundPlan = plan;
+		mBoundIndexes = columnIndexes;
+		mBoundComplete = isComplete(columnIndexes);
+		return columnIndexes;
+	}
 
-		return model;
+	/*
+	 * True if every column of the plan is in the cursor. Only such rows
+	 * go through the identity map, as a model mapped from a partial
+	 * projection has unset fields.
+	 */
+	static boolean isComplete(int[] columnIndexes) {
+		for (int columnIndex : columnIndexes) {
+			if (columnIndex < 0)
+				return false;
+		}
+		return true;
+	}
+
+	<T> T mapRow(MappingPlan<T> plan, int[] columnIndexes, T reused) {
+		return mapRow(plan, columnIndexes, reused, true);
 	}
 
 	/*
-	 * Can be shortened with reflection.
+	 * Maps current row. If `reused` is given and the model is mapped with
+	 * reflection, the row is written into it instead of a new instance.
+	 * If `identity` is false, the identity map is bypassed.
 	 */
-	private Object getValue(DbColumn column) {
-		String name = column.getName();
-		Object value = null;
-		int columnIndex = mCursor.getColumnIndex(name);
-		switch (column.getType()) {
-		case INTEGER:
-			value = mCursor.getInt(columnIndex);
-			break;
-		case BLOB:
-			value = mCursor.getBlob(columnIndex);
-			break;
-		case STRING:
-			value = mCursor.getString(columnIndex);
-			break;
-		case DOUBLE:
-			value = mCursor.getDouble(columnIndex);
-			break;
-		case FLOAT:
-			value = mCursor.getFloat(columnIndex);
-			break;
-		case LONG:
-			value = mCursor.getLong(columnIndex);
-			break;
-		case DATE:
-			try {
-				value = mCursor.getString(columnIndex);
-				value = DateUtils.fromString((String) value,
-						BaseDbModel.DB_DATE_FORMAT);
-			} catch (ParseException e) {
-				value = null;
-			}
-			break;
-		case BOOLEAN:
-			value = mCursor.getInt(columnIndex);
-			if (value != null) {
-				value = ((Integer)value) > 0 ? true : false;
-			}
-			break;
+	<T> T mapRow(MappingPlan<T> plan, int[] columnIndexes, T reused, boolean identity) {
+		RowMapper<T> mapper = plan.getMapper();
+		if (mapper != null)
+			return mapper.mapRow(mCursor, columnIndexes);
+
+		IdentityMap identityMap = identity ? mIdentityMap : null;
+		int primaryKey = plan.getPrimaryKey();
+		boolean complete = columnIndexes == mBoundIndexes ? 
+				mBoundComplete : isComplete(columnIndexes);
+		if (reused != null || identityMap == null || primaryKey < 0 || !complete) {
+			T model = reused != null ? reused : plan.newInstance();
+			plan.fill(model, mCursor, columnIndexes);
+			return model;
+		}
+
+		Object key = ValueReader.RAW.read(mCursor, columnIndexes[primaryKey]);
+		if (key == null) {
+			T model = plan.newInstance();
+			plan.fill(model, mCursor, columnIndexes);
+			return model;
+		}
+		T model = identityMap.get(plan.getModelClass(), key);
+		if (model == null) {
+			model = plan.newInstance();
+			plan.fill(model, mCursor, columnIndexes);
+			cacheModel(identityMap, plan.getModelClass(), key, model);
 		}
-		return value;
+		return model;
 	}
 
 	public <T> List<T> retreiveData(Class<T> klass) {
-		List<T> dataList = new ArrayList<T>();
+		MappingPlan<T> plan = MappingPlan.of(klass);
+		int[] columnIndexes = resolveColumnIndexes(plan);
+
+		if (mParallel && plan.getMapper() == null
+				&& mCursor.getCount() >= ParallelMapping.THRESHOLD) {
+			mCursor.moveToPosition(-1);
+			List<T> dataList = ParallelMapping.map(
+					mCursor, plan, columnIndexes, this, mIdentityMap);
+			mCursor.moveToFirst();
+			return dataList;
+		}
 
+		List<T> dataList = new ArrayList<T>(mCursor.getCount());
 		mCursor.moveToFirst();
 		if (mCursor.getCount() > 0) {
 			do {
-				dataList.add(createModel(klass));
+				dataList.add(mapRow(plan, columnIndexes, null));
 			} while (mCursor.moveToNext());
 			mCursor.moveToFirst();
 		}
 		return dataList;
 	}
 
+	/**
+	 * Reads numeric and boolean `columns` of every row into primitive
+	 * buffers in one pass, without mapping models.
+	 */
+	public ColumnBatch readColumns(DbColumn... columns) {
+		int[] columnIndexes = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			columnIndexes[i] = mCursor.getColumnIndex(columns[i].getName());
+			if (columnIndexes[i] < 0)
+				throw new IllegalArgumentException(
+						"Column " + columns[i].getName() + " is not in cursor");
+		}
+		ColumnBatch batch = new ColumnBatch(columns, Math.max(mCursor.getCount(), 1));
+		mCursor.moveToPosition(-1);
+		batch.read(mCursor, columnIndexes);
+		mCursor.moveToFirst();
+		return batch;
+	}
+
+	/**
+	 * Returns lazy iterator over models of the cursor. Rows are mapped one at
+	 * a time as the cursor advances. The cursor is closed when iteration
+	 * finishes or the iterator is closed.
+	 */
+	public <T> ModelIterator<T> iterate(Class<T> klass) {
+		return iterate(klass, false);
+	}
+
+	/**
+	 * Returns lazy iterator over models of the cursor.
+	 * @param klass
+	 * 		Model class
+	 * @param reuseInstance
+	 * 		If true, one model instance is reused for every row (flyweight).
+	 * 		Models mapped by a `RowMapper` are always new instances.
+	 */
+	public <T> ModelIterator<T> iterate(Class<T> klass, boolean reuseInstance) {
+		return new ModelIterator<T>(this, mCursor, klass, reuseInstance);
+	}
+
 	@SuppressLint("SimpleDateFormat")
 	private Date getDateByName(String columnName) throws ParseException {
 		String dateString = mCursor.getString(mCursor
@@ -2,6 +2,6 @@ package com.daftshady.superandroidkit.database;
 
 public abstract class BaseDbModel {
 
-	public static final String DB_DATE_FORMAT = "yyyy-MM-DD HH:mm:ss";
+	public static final String DB_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
 	public abstract DbColumn[] getColumns();
 }
\ No newline at end of file
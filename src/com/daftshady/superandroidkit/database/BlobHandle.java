@@ -0,0 +1,36 @@
+package com.daftshady.superandroidkit.database;
+
+/**
+ * BlobHandle
+ * Lazy reference to a large value kept in chunks by `BlobStore`. Models
+ * hold it in place of `byte[]` for `DbEnum.Type.BLOB_STREAM` columns,
+ * whose stored value is the blob id.
+ *
+ */
+public final class BlobHandle {
+
+	private final long mId;
+
+	public BlobHandle(long id) {
+		mId = id;
+	}
+
+	public long getId() {
+		return mId;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (mId ^ (mId >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof BlobHandle && ((BlobHandle) o).mId == mId;
+	}
+
+	@Override
+	public String toString() {
+		return "BlobHandle(" + mId + ")";
+	}
+}
@@ -0,0 +1,341 @@
+package com.daftshady.superandroidkit.database;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * BlobStore
+ * Keeps large values in chunk rows, so that no row comes near the
+ * `CursorWindow` limit and no value is held in memory at once.
+ * Values are written through `OutputStream` and read through
+ * `InputStream` one chunk at a time.
+ *
+ * The given `DbManager` must be opened writable. A rewrite runs in one
+ * transaction of the session, from `openOutputStream` until the stream is
+ * closed, so it should be written and closed on the opening thread. The
+ * blob has no length while it is rewritten. If writing fails, the rewrite
+ * is rolled back and the blob keeps its previous content and length.
+ * Writes are notified through `DbManager`, so that cached results and
+ * observable queries reading the blob tables are refreshed.
+ *
+ * Blobs are not deleted with the rows referencing them. Callers own that
+ * cleanup, either calling `delete` or binding the referencing column with
+ * `bindOwner`.
+ *
+ */
+public class BlobStore {
+
+	public static final String BLOB_TABLE = "blob_store";
+
+	public static final String CHUNK_TABLE = "blob_store_chunks";
+
+	public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+	private final DbManager mManager;
+
+	private final int mChunkSize;
+
+	public BlobStore(DbManager manager) {
+		this(manager, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize
+	 * 		Size of chunk rows of new blobs. Should stay well below the
+	 * 		`CursorWindow` size of 2MB.
+	 */
+	public BlobStore(DbManager manager, int chunkSize) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("Chunk size should be positive");
+		mManager = manager;
+		mChunkSize = chunkSize;
+		SQLiteDatabase db = manager.getDatabase();
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + BLOB_TABLE
+				+ " (id INTEGER PRIMARY KEY AUTOINCREMENT, length INTEGER)");
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + CHUNK_TABLE
+				+ " (blob_id INTEGER NOT NULL, seq INTEGER NOT NULL, data BLOB,"
+				+ " PRIMARY KEY (blob_id, seq))");
+	}
+
+	/**
+	 * Creates an empty blob.
+	 */
+	public BlobHandle create() {
+		ContentValues values = new ContentValues();
+		values.putNull("length");
+		long id = mManager.getDatabase().insertOrThrow(BLOB_TABLE, null, values);
+		mManager.onTableChanged(BLOB_TABLE);
+		return new BlobHandle(id);
+	}
+
+	/**
+	 * Returns length of `blob` in bytes, or -1 if it was not completely
+	 * written or doesn't exist.
+	 */
+	public long length(BlobHandle blob) {
+		Cursor cursor = mManager.getDatabase().rawQuery(
+				"SELECT length FROM " + BLOB_TABLE + " WHERE id = ?",
+				new String[] {String.valueOf(blob.getId())});
+		try {
+			if (!cursor.moveToFirst() || cursor.isNull(0))
+				return -1;
+			return cursor.getLong(0);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Opens stream replacing content of `blob`. The rewrite is committed
+	 * when the stream is closed.
+	 */
+	public OutputStream openOutputStream(BlobHandle blob) {
+		SQLiteDatabase db = mManager.getDatabase();
+		String[] args = new String[] {String.valueOf(blob.getId())};
+		mManager.beginTransaction();
+		try {
+			ContentValues values = new ContentValues();
+			values.putNull("length");
+			db.update(BLOB_TABLE, values, "id = ?", args);
+			db.delete(CHUNK_TABLE, "blob_id = ?", args);
+			// Notified when the rewrite ends.
+			mManager.onTableChanged(BLOB_TABLE);
+			mManager.onTableChanged(CHUNK_TABLE);
+			return new ChunkOutputStream(blob.getId());
+		} catch (RuntimeException e) {
+			mManager.endTransaction();
+			throw e;
+		}
+	}
+
+	public WritableByteChannel openWritableChannel(BlobHandle blob) {
+		return Channels.newChannel(openOutputStream(blob));
+	}
+
+	public InputStream openInputStream(BlobHandle blob) {
+		return new ChunkInputStream(blob.getId());
+	}
+
+	public ReadableByteChannel openReadableChannel(BlobHandle blob) {
+		return Channels.newChannel(openInputStream(blob));
+	}
+
+	public void delete(BlobHandle blob) {
+		SQLiteDatabase db = mManager.getDatabase();
+		String[] args = new String[] {String.valueOf(blob.getId())};
+		mManager.beginTransaction();
+		try {
+			db.delete(CHUNK_TABLE, "blob_id = ?", args);
+			db.delete(BLOB_TABLE, "id = ?", args);
+			mManager.onTableChanged(BLOB_TABLE);
+			mManager.onTableChanged(CHUNK_TABLE);
+			db.setTransactionSuccessful();
+		} finally {
+			mManager.endTransaction();
+		}
+	}
+
+	/**
+	 * Deletes blobs referenced by BLOB_STREAM `column` of `table` along
+	 * with their row, and replaced blobs when the column is updated, with
+	 * triggers. Rows replaced by `INSERT OR REPLACE` don't fire them, so
+	 * their blobs should still be deleted by callers. Those deletions are
+	 * not notified for the blob tables.
+	 */
+	public void bindOwner(String table, String column) {
+		String trigger = BLOB_TABLE + "_" + table + "_" + column;
+		String delete = "DELETE FROM " + CHUNK_TABLE + " WHERE blob_id = old." 
+				+ column + "; DELETE FROM " + BLOB_TABLE + " WHERE id = old." 
+				+ column + ";";
+		SQLiteDatabase db = mManager.getDatabase();
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS " + trigger + "_ad AFTER DELETE ON " 
+				+ table + " BEGIN " + delete + " END");
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS " + trigger + "_au AFTER UPDATE OF " 
+				+ column + " ON " + table + " WHEN old." + column + " IS NOT new." 
+				+ column + " BEGIN " + delete + " END");
+	}
+
+	private class ChunkOutputStream extends OutputStream {
+		private final long mBlobId;
+		private final byte[] mBuffer = new byte[mChunkSize];
+		private final SQLiteStatement mInsert;
+		private int mPosition = 0;
+		private int mSeq = 0;
+		private long mLength = 0;
+		private boolean mClosed = false;
+
+		ChunkOutputStream(long blobId) {
+			mBlobId = blobId;
+			mInsert = mManager.getDatabase().compileStatement(
+					"INSERT INTO " + CHUNK_TABLE 
+					+ " (blob_id, seq, data) VALUES (?, ?, ?)");
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			checkOpen();
+			if (mPosition == mBuffer.length)
+				writeChunk();
+			mBuffer[mPosition++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			checkOpen();
+			while (len > 0) {
+				if (mPosition == mBuffer.length)
+					writeChunk();
+				int count = Math.min(len, mBuffer.length - mPosition);
+				System.arraycopy(b, off, mBuffer, mPosition, count);
+				mPosition += count;
+				off += count;
+				len -= count;
+			}
+		}
+
+		/*
+		 * Writes the last chunk and length, and commits the rewrite.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (mClosed)
+				return;
+			try {
+				if (mPosition > 0)
+					writeChunk();
+				ContentValues values = new ContentValues();
+				values.put("length", mLength);
+				SQLiteDatabase db = mManager.getDatabase();
+				db.update(BLOB_TABLE, values, "id = ?",
+						new String[] {String.valueOf(mBlobId)});
+				db.setTransactionSuccessful();
+			} catch (SQLException e) {
+				throw new IOException("Failed to close blob : " + e.getMessage());
+			} finally {
+				finish();
+			}
+		}
+
+		/*
+		 * Ends the transaction of the rewrite, rolling it back unless it
+		 * was marked successful.
+		 */
+		private void finish() {
+			if (mClosed)
+				return;
+			mClosed = true;
+			mInsert.close();
+			mManager.endTransaction();
+		}
+
+		private void writeChunk() throws IOException {
+			byte[] chunk = mPosition == mBuffer.length ? mBuffer : copy(mBuffer, mPosition);
+			try {
+				mInsert.bindLong(1, mBlobId);
+				mInsert.bindLong(2, mSeq);
+				mInsert.bindBlob(3, chunk);
+				mInsert.executeInsert();
+			} catch (SQLException e) {
+				finish();
+				throw new IOException("Failed to write blob chunk : " + e.getMessage());
+			}
+			mSeq++;
+			mLength += mPosition;
+			mPosition = 0;
+		}
+
+		private void checkOpen() throws IOException {
+			if (mClosed)
+				throw new IOException("Stream closed");
+		}
+	}
+
+	private class ChunkInputStream extends InputStream {
+		private final String mBlobId;
+		private byte[] mChunk;
+		private int mPosition = 0;
+		private int mSeq = 0;
+		private boolean mEnd = false;
+
+		ChunkInputStream(long blobId) {
+			mBlobId = String.valueOf(blobId);
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!fill())
+				return -1;
+			return mChunk[mPosition++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!fill())
+				return -1;
+			int count = Math.min(len, mChunk.length - mPosition);
+			System.arraycopy(mChunk, mPosition, b, off, count);
+			mPosition += count;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return mChunk != null ? mChunk.length - mPosition : 0;
+		}
+
+		@Override
+		public void close() {
+			mEnd = true;
+			mChunk = null;
+		}
+
+		/*
+		 * Loads next chunk if current one is consumed. Returns false at
+		 * the end of blob.
+		 */
+		private boolean fill() throws IOException {
+			while (!mEnd && (mChunk == null || mPosition == mChunk.length)) {
+				Cursor cursor;
+				try {
+					cursor = mManager.getDatabase().rawQuery(
+							"SELECT data FROM " + CHUNK_TABLE 
+							+ " WHERE blob_id = ? AND seq = ?",
+							new String[] {mBlobId, String.valueOf(mSeq)});
+				} catch (SQLException e) {
+					throw new IOException("Failed to read blob chunk : " + e.getMessage());
+				}
+				try {
+					if (cursor.moveToFirst()) {
+						mChunk = cursor.getBlob(0);
+						mPosition = 0;
+						mSeq++;
+					} else {
+						mEnd = true;
+						mChunk = null;
+					}
+				} finally {
+					cursor.close();
+				}
+			}
+			return !mEnd;
+		}
+	}
+
+	private static byte[] copy(byte[] bytes, int length) {
+		byte[] copy = new byte[length];
+		System.arraycopy(bytes, 0, copy, 0, length);
+		return copy;
+	}
+}
@@ -0,0 +1,170 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * BulkInserter
+ * Inserts rows with one compiled `SQLiteStatement` per column set, binding
+ * values by position instead of building SQL for every row.
+ * Rows are committed in transactions of `chunkSize` rows.
+ *
+ */
+class BulkInserter {
+
+	private static final String[] CONFLICT_CLAUSES = {
+		"", " OR ROLLBACK", " OR ABORT", " OR FAIL", " OR IGNORE", " OR REPLACE"
+	};
+
+	private final DbManager mManager;
+
+	private final SQLiteDatabase mDatabase;
+
+	private final String mTableName;
+
+	private final String mConflictClause;
+
+	private final Map<String, SQLiteStatement> mStatements =
+			new HashMap<String, SQLiteStatement>();
+
+	private String[] mColumns;
+
+	private SQLiteStatement mStatement;
+
+	BulkInserter(DbManager manager, String tableName, int conflictAlgorithm) {
+		if (conflictAlgorithm < 0 || conflictAlgorithm >= CONFLICT_CLAUSES.length)
+			throw new IllegalArgumentException("Unknown conflict algorithm");
+		mManager = manager;
+		mDatabase = manager.getDatabase();
+		mTableName = tableName;
+		mConflictClause = CONFLICT_CLAUSES[conflictAlgorithm];
+	}
+
+	/**
+	 * Inserts all rows of `data`.
+	 * @return
+	 * 		Number of rows inserted. Rows skipped by `OR IGNORE` are not counted.
+	 */
+	int insert(List<ContentValues> data, int chunkSize) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("Chunk size should be positive");
+
+		int inserted = 0;
+		int size = data.size();
+		try {
+			for (int start = 0; start < size; start += chunkSize) {
+				int end = Math.min(start + chunkSize, size);
+				mManager.beginTransaction();
+				try {
+					for (int i = start; i < end; i++) {
+						if (insert(data.get(i)) != -1)
+							inserted++;
+					}
+					mDatabase.setTransactionSuccessful();
+				} finally {
+					mManager.endTransaction();
+				}
+			}
+		} finally {
+			close();
+		}
+		return inserted;
+	}
+
+	/**
+	 * Inserts a row. Should be called inside a transaction.
+	 * @return
+	 * 		Row id of inserted row, or -1 if ignored.
+	 */
+	long insert(ContentValues values) {
+		SQLiteStatement statement = prepare(values);
+		String[] columns = mColumns;
+		for (int i = 0; i < columns.length; i++)
+			bind(statement, i + 1, values.get(columns[i]));
+		return statement.executeInsert();
+	}
+
+	void close() {
+		for (SQLiteStatement statement : mStatements.values())
+			statement.close();
+		mStatements.clear();
+		mStatement = null;
+		mColumns = null;
+	}
+
+	/*
+	 * Rows usually share a column set, so previous statement is reused
+	 * without sorting keys when the column set is unchanged.
+	 */
+	private SQLiteStatement prepare(ContentValues values) {
+		if (mStatement != null && hasSameColumns(values))
+			return mStatement;
+
+		String[] columns = new String[values.size()];
+		int i = 0;
+		for (Map.Entry<String, Object> entry : values.valueSet())
+			columns[i++] = entry.getKey();
+		Arrays.sort(columns);
+
+		String key = Arrays.toString(columns);
+		SQLiteStatement statement = mStatements.get(key);
+		if (statement == null) {
+			statement = mDatabase.compileStatement(buildSql(columns));
+			mStatements.put(key, statement);
+		}
+		mColumns = columns;
+		mStatement = statement;
+		return statement;
+	}
+
+	private boolean hasSameColumns(ContentValues values) {
+		if (values.size() != mColumns.length)
+			return false;
+		for (String column : mColumns) {
+			if (!values.containsKey(column))
+				return false;
+		}
+		return true;
+	}
+
+	private String buildSql(String[] columns) {
+		StringBuilder sql = new StringBuilder(64 + columns.length * 16);
+		sql.append("INSERT").append(mConflictClause)
+				.append(" INTO ").append(mTableName).append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0)
+				sql.append(',');
+			sql.append(columns[i]);
+		}
+		sql.append(") VALUES (");
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0)
+				sql.append(',');
+			sql.append('?');
+		}
+		return sql.append(')').toString();
+	}
+
+	static void bind(SQLiteStatement statement, int index, Object value) {
+		if (value == null) {
+			statement.bindNull(index);
+		} else if (value instanceof Long || value instanceof Integer
+				|| value instanceof Short || value instanceof Byte) {
+			statement.bindLong(index, ((Number) value).longValue());
+		} else if (value instanceof Double || value instanceof Float) {
+			statement.bindDouble(index, ((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+		} else if (value instanceof byte[]) {
+			statement.bindBlob(index, (byte[]) value);
+		} else {
+			statement.bindString(index, value.toString());
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+/**
+ * BulkUpdater
+ * Updates rows by key with one compiled `SQLiteStatement` per column set,
+ * the update counterpart of `BulkInserter`. Counting updated rows of a
+ * statement needs API 11, so below it rows are updated through
+ * `SQLiteDatabase.update` instead.
+ *
+ */
+class BulkUpdater {
+
+	private final SQLiteDatabase mDatabase;
+
+	private final String mTableName;
+
+	private final String mKeyColumn;
+
+	private final Map<String, SQLiteStatement> mStatements =
+			new HashMap<String, SQLiteStatement>();
+
+	BulkUpdater(DbManager manager, String tableName, String keyColumn) {
+		mDatabase = manager.getDatabase();
+		mTableName = tableName;
+		mKeyColumn = keyColumn;
+	}
+
+	/**
+	 * Updates row whose key is `key` with `values`. Should be called inside
+	 * a transaction.
+	 * @return
+	 * 		Number of rows updated.
+	 */
+	int update(ContentValues values, Object key) {
+		values.remove(mKeyColumn);
+		if (values.size() == 0)
+			return 0;
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+			return mDatabase.update(mTableName, values,
+					mKeyColumn + " = ?", new String[] {String.valueOf(key)});
+		}
+
+		String[] columns = new String[values.size()];
+		int i = 0;
+		for (Map.Entry<String, Object> entry : values.valueSet())
+			columns[i++] = entry.getKey();
+		Arrays.sort(columns);
+
+		String statementKey = Arrays.toString(columns);
+		SQLiteStatement statement = mStatements.get(statementKey);
+		if (statement == null) {
+			statement = mDatabase.compileStatement(buildSql(columns));
+			mStatements.put(statementKey, statement);
+		}
+		for (i = 0; i < columns.length; i++)
+			BulkInserter.bind(statement, i + 1, values.get(columns[i]));
+		BulkInserter.bind(statement, columns.length + 1, key);
+		return executeUpdateDelete(statement);
+	}
+
+	void close() {
+		for (SQLiteStatement statement : mStatements.values())
+			statement.close();
+		mStatements.clear();
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private static int executeUpdateDelete(SQLiteStatement statement) {
+		return statement.executeUpdateDelete();
+	}
+
+	private String buildSql(String[] columns) {
+		StringBuilder sql = new StringBuilder(64 + columns.length * 16);
+		sql.append("UPDATE ").append(mTableName).append(" SET ");
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0)
+				sql.append(',');
+			sql.append(columns[i]).append(" = ?");
+		}
+		return sql.append(" WHERE ").append(mKeyColumn).append(" = ?").toString();
+	}
+}
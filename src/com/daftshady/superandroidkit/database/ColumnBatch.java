@@ -0,0 +1,116 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.BitSet;
+
+import android.database.Cursor;
+
+import com.daftshady.superandroidkit.datastructure.PrimitiveBuffer;
+
+/**
+ * ColumnBatch
+ * Numeric and boolean columns of a cursor read into primitive buffers in
+ * one pass, without boxing or allocation per row.
+ * INTEGER columns are read as int, LONG and TIMESTAMP as long, FLOAT and
+ * DOUBLE as double, BOOLEAN as bits. NULL is read as 0 or false.
+ *
+ */
+public class ColumnBatch {
+
+	private final DbColumn[] mColumns;
+
+	private final Object[] mBuffers;
+
+	private int mRowCount;
+
+	ColumnBatch(DbColumn[] columns, int capacity) {
+		mColumns = columns;
+		mBuffers = new Object[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			switch (columns[i].getType()) {
+			case INTEGER:
+				mBuffers[i] = new PrimitiveBuffer.OfInt(capacity);
+				break;
+			case LONG:
+			case TIMESTAMP:
+				mBuffers[i] = new PrimitiveBuffer.OfLong(capacity);
+				break;
+			case FLOAT:
+			case DOUBLE:
+				mBuffers[i] = new PrimitiveBuffer.OfDouble(capacity);
+				break;
+			case BOOLEAN:
+				mBuffers[i] = new BitSet(capacity);
+				break;
+			default:
+				throw new IllegalArgumentException(
+						"Column " + columns[i].getName() + " is not numeric");
+			}
+		}
+	}
+
+	/*
+	 * Reads rows from the current position of `cursor` to the end.
+	 */
+	void read(Cursor cursor, int[] columnIndexes) {
+		if (cursor.isBeforeFirst() && !cursor.moveToFirst())
+			return;
+		Object[] buffers = mBuffers;
+		while (!cursor.isAfterLast()) {
+			for (int i = 0; i < buffers.length; i++) {
+				int columnIndex = columnIndexes[i];
+				Object buffer = buffers[i];
+				if (buffer instanceof PrimitiveBuffer.OfInt) {
+					((PrimitiveBuffer.OfInt) buffer).add(cursor.getInt(columnIndex));
+				} else if (buffer instanceof PrimitiveBuffer.OfLong) {
+					((PrimitiveBuffer.OfLong) buffer).add(cursor.getLong(columnIndex));
+				} else if (buffer instanceof PrimitiveBuffer.OfDouble) {
+					((PrimitiveBuffer.OfDouble) buffer).add(cursor.getDouble(columnIndex));
+				} else if (cursor.getInt(columnIndex) > 0) {
+					((BitSet) buffer).set(mRowCount);
+				}
+			}
+			mRowCount++;
+			cursor.moveToNext();
+		}
+	}
+
+	public int getRowCount() {
+		return mRowCount;
+	}
+
+	public PrimitiveBuffer.OfInt getInts(DbColumn column) {
+		return (PrimitiveBuffer.OfInt) buffer(column, DbEnum.Type.INTEGER);
+	}
+
+	public PrimitiveBuffer.OfLong getLongs(DbColumn column) {
+		return (PrimitiveBuffer.OfLong) buffer(
+				column, DbEnum.Type.LONG, DbEnum.Type.TIMESTAMP);
+	}
+
+	public PrimitiveBuffer.OfDouble getDoubles(DbColumn column) {
+		return (PrimitiveBuffer.OfDouble) buffer(
+				column, DbEnum.Type.DOUBLE, DbEnum.Type.FLOAT);
+	}
+
+	/**
+	 * Returns bits of BOOLEAN column, bit `i` set if row `i` is true.
+	 */
+	public BitSet getBooleans(DbColumn column) {
+		return (BitSet) buffer(column, DbEnum.Type.BOOLEAN);
+	}
+
+	private Object buffer(DbColumn column, DbEnum.Type... types) {
+		for (int i = 0; i < mColumns.length; i++) {
+			if (!mColumns[i].getName().equals(column.getName()))
+				continue;
+			for (DbEnum.Type type : types) {
+				if (mColumns[i].getType() == type)
+					return mBuffers[i];
+			}
+			throw new IllegalArgumentException(
+					"Column " + column.getName() + " is of type " + mColumns[i].getType());
+		}
+		throw new IllegalArgumentException(
+				"Column " + column.getName() + " is not in batch");
+	}
+}
@@ -7,12 +7,24 @@ package com.daftshady.superandroidkit.database;
  */
 public class DbColumn {
 	public DbColumn(String name, DbEnum.Type type) {
+		this(name, type, false);
+	}
+	
+	/**
+	 * @param searchable
+	 * 		If true, STRING column is indexed for full-text search by
+	 * 		`FtsTable` of its table.
+	 */
+	public DbColumn(String name, DbEnum.Type type, boolean searchable) {
 		this.name = name;
 		this.type = type;
+		this.searchable = searchable;
 	}
 	
 	private String name;
 	private DbEnum.Type type;
+	private boolean searchable;
+	private boolean primaryKey;
 	
 	
 	public String getName() {
@@ -30,4 +42,23 @@ public class DbColumn {
 	public void setType(DbEnum.Type type) {
 		this.type = type;
 	}
+	
+	public boolean isSearchable() {
+		return searchable;
+	}
+	
+	public void setSearchable(boolean searchable) {
+		this.searchable = searchable;
+	}
+	
+	public boolean isPrimaryKey() {
+		return primaryKey;
+	}
+	
+	/**
+	 * Marks the column identifying rows of the model, used by `IdentityMap`.
+	 */
+	public void setPrimaryKey(boolean primaryKey) {
+		this.primaryKey = primaryKey;
+	}
 }
\ No newline at end of file
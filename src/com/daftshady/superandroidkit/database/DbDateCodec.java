@@ -0,0 +1,128 @@
+package com.daftshady.superandroidkit.database;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import com.daftshady.superandroidkit.utils.DateUtils;
+
+/**
+ * DbDateCodec
+ * Converts `DbEnum.Type.DATE` column strings of fixed layout
+ * `BaseDbModel.DB_DATE_FORMAT` without `SimpleDateFormat`.
+ * Strings are in default time zone, as `SimpleDateFormat` reads them.
+ *
+ */
+public final class DbDateCodec {
+
+	/*
+	 * Pattern used before `DB_DATE_FORMAT` was fixed. Its `DD` is day of
+	 * year, so rows written with it are read back with it.
+	 */
+	private static final String LEGACY_DB_DATE_FORMAT = "yyyy-MM-DD HH:mm:ss";
+
+	private static final int LENGTH = 19;
+
+	private static final ThreadLocal<Calendar> sCalendar = new ThreadLocal<Calendar>() {
+		@Override
+		protected Calendar initialValue() {
+			return new GregorianCalendar();
+		}
+	};
+
+	private DbDateCodec() {}
+
+	/**
+	 * Parses date string of `DB_DATE_FORMAT`, or of the legacy pattern.
+	 * @return
+	 * 		Parsed date, or null if `value` is null or not a date.
+	 */
+	public static Date parse(String value) {
+		if (value == null)
+			return null;
+		long millis = parseMillis(value);
+		if (millis != Long.MIN_VALUE)
+			return new Date(millis);
+		try {
+			return DateUtils.fromString(value, LEGACY_DB_DATE_FORMAT);
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parses date string of `DB_DATE_FORMAT` to epoch millis.
+	 * @return
+	 * 		Epoch millis, or `Long.MIN_VALUE` if `value` is not of the layout.
+	 */
+	public static long parseMillis(String value) {
+		if (value.length() != LENGTH
+				|| value.charAt(4) != '-' || value.charAt(7) != '-'
+				|| value.charAt(10) != ' '
+				|| value.charAt(13) != ':' || value.charAt(16) != ':')
+			return Long.MIN_VALUE;
+
+		int year = digits(value, 0, 4);
+		int month = digits(value, 5, 2);
+		int day = digits(value, 8, 2);
+		int hour = digits(value, 11, 2);
+		int minute = digits(value, 14, 2);
+		int second = digits(value, 17, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+				|| hour < 0 || hour > 23 || minute < 0 || minute > 59
+				|| second < 0 || second > 59)
+			return Long.MIN_VALUE;
+
+		Calendar calendar = sCalendar.get();
+		calendar.clear();
+		calendar.set(year, month - 1, day, hour, minute, second);
+		return calendar.getTimeInMillis();
+	}
+
+	/**
+	 * Formats date to `DB_DATE_FORMAT`.
+	 */
+	public static String format(Date date) {
+		return date != null ? format(date.getTime()) : null;
+	}
+
+	public static String format(long millis) {
+		Calendar calendar = sCalendar.get();
+		calendar.setTimeInMillis(millis);
+		char[] chars = new char[LENGTH];
+		put(chars, 0, calendar.get(Calendar.YEAR), 4);
+		chars[4] = '-';
+		put(chars, 5, calendar.get(Calendar.MONTH) + 1, 2);
+		chars[7] = '-';
+		put(chars, 8, calendar.get(Calendar.DAY_OF_MONTH), 2);
+		chars[10] = ' ';
+		put(chars, 11, calendar.get(Calendar.HOUR_OF_DAY), 2);
+		chars[13] = ':';
+		put(chars, 14, calendar.get(Calendar.MINUTE), 2);
+		chars[16] = ':';
+		put(chars, 17, calendar.get(Calendar.SECOND), 2);
+		return new String(chars);
+	}
+
+	/*
+	 * Returns -1 if any of the characters is not a digit.
+	 */
+	private static int digits(String value, int start, int count) {
+		int result = 0;
+		for (int i = start; i < start + count; i++) {
+			int digit = value.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+
+	private static void put(char[] chars, int start, int value, int count) {
+		for (int i = start + count - 1; i >= start; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+}
@@ -1,5 +1,12 @@
 package com.daftshady.superandroidkit.database;
 
 public class DbEnum {
-	public static enum Type {INTEGER, FLOAT, LONG, DOUBLE, BLOB, STRING, DATE, BOOLEAN};
+	/*
+	 * DATE is stored as `BaseDbModel.DB_DATE_FORMAT` string.
+	 * TIMESTAMP is stored as INTEGER epoch millis, and mapped to `Date`
+	 * or to `long` field.
+	 * BLOB_STREAM is stored as INTEGER id of a `BlobStore` blob, and mapped
+	 * to `BlobHandle` field.
+	 */
+	public static enum Type {INTEGER, FLOAT, LONG, DOUBLE, BLOB, STRING, DATE, BOOLEAN, TIMESTAMP, BLOB_STREAM};
 }
@@ -0,0 +1,110 @@
+package com.daftshady.superandroidkit.database;
+
+/**
+ * DbEvent
+ * A database operation measured by `DbInstrumentation`.
+ *
+ */
+public class DbEvent {
+
+	public static enum Operation {SELECT, INSERT, BULK_INSERT, UPDATE, DELETE, TRANSACTION};
+
+	private final Operation mOperation;
+
+	private final String mTable;
+
+	private final String mStatement;
+
+	private final long mDurationNanos;
+
+	private final int mRowCount;
+
+	private final String mQueryPlan;
+
+	private final boolean mSlow;
+
+	private final boolean mCached;
+
+	DbEvent(Operation operation, String table, String statement,
+			long durationNanos, int rowCount, String queryPlan, boolean slow,
+			boolean cached) {
+		mOperation = operation;
+		mTable = table;
+		mStatement = statement;
+		mDurationNanos = durationNanos;
+		mRowCount = rowCount;
+		mQueryPlan = queryPlan;
+		mSlow = slow;
+		mCached = cached;
+	}
+
+	public Operation getOperation() {
+		return mOperation;
+	}
+
+	/**
+	 * Table of the operation, or null for transactions.
+	 */
+	public String getTable() {
+		return mTable;
+	}
+
+	/**
+	 * SQL of the operation with `?` placeholders in place of values, or a
+	 * description such as `INSERT INTO <table> (bulk)` or `TRANSACTION`
+	 * of operations run by several statements.
+	 */
+	public String getStatement() {
+		return mStatement;
+	}
+
+	public long getDurationNanos() {
+		return mDurationNanos;
+	}
+
+	/**
+	 * Number of rows selected or written, or -1 if the operation failed.
+	 */
+	public int getRowCount() {
+		return mRowCount;
+	}
+
+	/**
+	 * Output of `EXPLAIN QUERY PLAN` if the operation was slower than the
+	 * slow query threshold or every operation is explained, or null.
+	 */
+	public String getQueryPlan() {
+		return mQueryPlan;
+	}
+
+	/**
+	 * Whether the operation was slower than the slow query threshold.
+	 */
+	public boolean isSlow() {
+		return mSlow;
+	}
+
+	/**
+	 * Whether the selection was served from `QueryCache` without querying
+	 * the database.
+	 */
+	public boolean isCached() {
+		return mCached;
+	}
+
+	/**
+	 * Whether the operation failed with an exception.
+	 */
+	public boolean isFailed() {
+		return mRowCount < 0;
+	}
+
+	@Override
+	public String toString() {
+		return mOperation + (mTable != null ? " " + mTable : "") 
+				+ (mCached ? " cached" : "") + (isFailed() ? " failed" : "")
+				+ " rows=" + mRowCount 
+				+ " time=" + (mDurationNanos / 1000) + "us"
+				+ " : " + mStatement;
+	}
+}
@@ -0,0 +1,84 @@
+package com.daftshady.superandroidkit.database;
+
+/**
+ * POJO for database index, created with tables by `AbstractDbHelper`.
+ * Partial index (`where`) requires SQLite 3.8.0, which is API 21 or higher.
+ *
+ */
+public class DbIndex {
+	public DbIndex(String table, DbColumn... columns) {
+		this(null, table, columns);
+	}
+	
+	public DbIndex(String name, String table, DbColumn... columns) {
+		if (table == null || columns == null || columns.length == 0)
+			throw new IllegalArgumentException("Index needs table and columns");
+		this.table = table;
+		this.columns = columns;
+		this.name = name != null ? name : defaultName(table, columns);
+	}
+	
+	private String name;
+	private String table;
+	private DbColumn[] columns;
+	private boolean unique = false;
+	private String where;
+	
+	
+	public String getName() {
+		return name;
+	}
+	
+	public String getTable() {
+		return table;
+	}
+	
+	public DbColumn[] getColumns() {
+		return columns;
+	}
+	
+	public boolean isUnique() {
+		return unique;
+	}
+	
+	public DbIndex setUnique(boolean unique) {
+		this.unique = unique;
+		return this;
+	}
+	
+	public String getWhere() {
+		return where;
+	}
+	
+	/**
+	 * Makes this a partial index of rows matching `where`.
+	 */
+	public DbIndex setWhere(String where) {
+		this.where = where;
+		return this;
+	}
+	
+	public String toCreationQuery() {
+		StringBuilder sql = new StringBuilder("CREATE ");
+		if (unique)
+			sql.append("UNIQUE ");
+		sql.append("INDEX IF NOT EXISTS ").append(name)
+				.append(" ON ").append(table).append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0)
+				sql.append(", ");
+			sql.append(columns[i].getName());
+		}
+		sql.append(')');
+		if (where != null)
+			sql.append(" WHERE ").append(where);
+		return sql.toString();
+	}
+	
+	private static String defaultName(String table, DbColumn[] columns) {
+		StringBuilder name = new StringBuilder("idx_").append(table);
+		for (DbColumn column : columns)
+			name.append('_').append(column.getName());
+		return name.toString();
+	}
+}
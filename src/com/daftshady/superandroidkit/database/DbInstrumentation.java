@@ -0,0 +1,193 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * DbInstrumentation
+ * Measures operations of `DbManager` sessions it is set on, and reports
+ * them to its listeners. Selections and deletions slower than the slow
+ * query threshold, or all of them if `explainAll` is set, are reported
+ * with their `EXPLAIN QUERY PLAN` output.
+ * Same instrumentation can be shared by sessions.
+ *
+ */
+public class DbInstrumentation {
+
+	private final String TAG = "DbInstrumentation";
+
+	private final CopyOnWriteArrayList<DbListener> mListeners =
+			new CopyOnWriteArrayList<DbListener>();
+
+	private volatile long mSlowQueryNanos = Long.MAX_VALUE;
+
+	private volatile boolean mLogSlowQueries = true;
+
+	private volatile boolean mExplainAll = false;
+
+	public void addListener(DbListener listener) {
+		mListeners.addIfAbsent(listener);
+	}
+
+	public void removeListener(DbListener listener) {
+		mListeners.remove(listener);
+	}
+
+	/**
+	 * Operations slower than `threshold` are explained and logged.
+	 * Disabled by default.
+	 */
+	public void setSlowQueryThreshold(long threshold, TimeUnit unit) {
+		mSlowQueryNanos = unit.toNanos(threshold);
+	}
+
+	public void setLogSlowQueries(boolean log) {
+		mLogSlowQueries = log;
+	}
+
+	/**
+	 * If true, query plan of every selection and deletion is attached to
+	 * its event, not only of slow ones.
+	 */
+	public void setExplainAll(boolean explainAll) {
+		mExplainAll = explainAll;
+	}
+
+	boolean isSlow(long durationNanos) {
+		return durationNanos >= mSlowQueryNanos;
+	}
+
+	/*
+	 * `sql` is the statement of the operation, or null to describe it
+	 * from `operation` and `table`. `args` are only used to explain slow
+	 * selections and deletions.
+	 */
+	void report(SQLiteDatabase database, DbEvent.Operation operation,
+			String table, String sql, String[] args,
+			long durationNanos, int rowCount) {
+		report(database, operation, table, sql, args, durationNanos, rowCount, false);
+	}
+
+	/*
+	 * Reports a selection served from `QueryCache` if `cached`, which is
+	 * never explained.
+	 */
+	void report(SQLiteDatabase database, DbEvent.Operation operation,
+			String table, String sql, String[] args,
+			long durationNanos, int rowCount, boolean cached) {
+		boolean slow = !cached && isSlow(durationNanos);
+		boolean explainable = sql != null && (operation == DbEvent.Operation.SELECT 
+				|| operation == DbEvent.Operation.DELETE);
+		String plan = null;
+		if (explainable && !cached && rowCount >= 0 && (slow || mExplainAll))
+			plan = explain(database, sql, args);
+		if (sql == null)
+			sql = describe(operation, table);
+		if (slow) {
+			if (plan == null)
+				plan = "";
+			if (mLogSlowQueries) {
+				Log.w(TAG, "Slow " + operation + " on " + table + " took " 
+						+ (durationNanos / 1000) + "us : " + sql + "\n" + plan);
+			}
+		}
+		if (mListeners.isEmpty())
+			return;
+		DbEvent event = new DbEvent(
+				operation, table, sql, durationNanos, rowCount, plan, slow, cached);
+		for (DbListener listener : mListeners)
+			listener.onEvent(event);
+	}
+
+	/*
+	 * Readable statement of an insertion, with placeholders in place of
+	 * values. Columns are sorted, so that rows with the same columns are
+	 * described alike.
+	 */
+	static String describeInsert(String table, ContentValues values) {
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+		List<String> columns = sortedColumns(values);
+		for (int i = 0; i < columns.size(); i++)
+			sql.append(i > 0 ? ", " : "").append(columns.get(i));
+		sql.append(") VALUES (");
+		for (int i = 0; i < columns.size(); i++)
+			sql.append(i > 0 ? ", ?" : "?");
+		return sql.append(')').toString();
+	}
+
+	/*
+	 * Readable statement of an update, like `describeInsert`.
+	 */
+	static String describeUpdate(String table, ContentValues values, String whereClause) {
+		StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+		List<String> columns = sortedColumns(values);
+		for (int i = 0; i < columns.size(); i++)
+			sql.append(i > 0 ? ", " : "").append(columns.get(i)).append(" = ?");
+		if (whereClause != null)
+			sql.append(" WHERE ").append(whereClause);
+		return sql.toString();
+	}
+
+	/*
+	 * Statement of operations whose SQL isn't known, as rows are written
+	 * by several statements.
+	 */
+	private static String describe(DbEvent.Operation operation, String table) {
+		switch (operation) {
+		case INSERT:
+			return "INSERT INTO " + table;
+		case BULK_INSERT:
+			return "INSERT INTO " + table + " (bulk)";
+		case UPDATE:
+			return "UPDATE " + table;
+		case DELETE:
+			return "DELETE FROM " + table;
+		case SELECT:
+			return "SELECT FROM " + table;
+		default:
+			return "TRANSACTION";
+		}
+	}
+
+	private static List<String> sortedColumns(ContentValues values) {
+		// keySet requires API 11.
+		List<String> columns = new ArrayList<String>(values.size());
+		for (Map.Entry<String, Object> value : values.valueSet())
+			columns.add(value.getKey());
+		Collections.sort(columns);
+		return columns;
+	}
+
+	/**
+	 * Returns `EXPLAIN QUERY PLAN` output of `sql`, one line per step.
+	 */
+	public static String explain(SQLiteDatabase database, String sql, String[] args) {
+		StringBuilder plan = new StringBuilder();
+		Cursor cursor = null;
+		try {
+			cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+			int detail = cursor.getColumnIndex("detail");
+			while (cursor.moveToNext()) {
+				if (plan.length() > 0)
+					plan.append('\n');
+				plan.append(cursor.getString(detail));
+			}
+		} catch (SQLException e) {
+			plan.append("EXPLAIN failed : ").append(e.getMessage());
+		} finally {
+			if (cursor != null)
+				cursor.close();
+		}
+		return plan.toString();
+	}
+}
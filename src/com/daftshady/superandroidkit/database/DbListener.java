@@ -0,0 +1,11 @@
+package com.daftshady.superandroidkit.database;
+
+/**
+ * DbListener
+ * Receives measured operations from `DbInstrumentation`. Called on the
+ * thread which ran the operation, so it should return quickly.
+ *
+ */
+public interface DbListener {
+	void onEvent(DbEvent event);
+}
@@ -0,0 +1,305 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * DbMaintenance
+ * Keeps database file size and planner statistics steady by running, under
+ * a time budget per run :
+ * WAL checkpoint, if the database is in WAL mode.
+ * Incremental vacuum, if `auto_vacuum` of the database is INCREMENTAL
+ * (see `AbstractDbHelper.setIncrementalVacuum`).
+ * `PRAGMA optimize` (or `ANALYZE` on SQLite without it), once per
+ * analyze interval.
+ * `install` runs it on a background thread when the looper of calling
+ * thread becomes idle, at most once per run interval.
+ * A run holds a session of the helper so that the database is not closed
+ * under it, but doesn't close the database when it ends.
+ *
+ */
+public class DbMaintenance {
+
+	private final String TAG = "DbMaintenance";
+
+	private static final int VACUUM_STEP_PAGES = 64;
+
+	private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+	// SQLite 3.18 with PRAGMA optimize ships from Android 8.0.
+	private static final int SDK_PRAGMA_OPTIMIZE = 26;
+
+	private final SQLiteOpenHelper mHelper;
+
+	private final ExecutorService mExecutor = 
+			Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "DbMaintenance");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+
+	private volatile long mBudgetMillis = 50;
+
+	private volatile long mIntervalMillis = TimeUnit.MINUTES.toMillis(10);
+
+	private volatile long mAnalyzeIntervalMillis = TimeUnit.DAYS.toMillis(1);
+
+	private long mLastRun = -1;
+
+	private long mLastAnalyze = -1;
+
+	private boolean mRunning;
+
+	private long mTotalReclaimedPages;
+
+	private long mTotalMillis;
+
+	private MessageQueue mQueue;
+
+	private final MessageQueue.IdleHandler mIdleHandler = 
+			new MessageQueue.IdleHandler() {
+		@Override
+		public boolean queueIdle() {
+			if (isDue()) {
+				mExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						runNow();
+					}
+				});
+			}
+			return true;
+		}
+	};
+
+	public DbMaintenance(SQLiteOpenHelper helper) {
+		if (helper == null)
+			throw new IllegalArgumentException("Should provide helper");
+		mHelper = helper;
+	}
+
+	/**
+	 * Sets time a run may spend. A step started within budget is finished,
+	 * so a run can slightly exceed it.
+	 */
+	public void setBudget(long budget, TimeUnit unit) {
+		mBudgetMillis = unit.toMillis(budget);
+	}
+
+	/**
+	 * Sets minimum time between runs started on idle.
+	 */
+	public void setInterval(long interval, TimeUnit unit) {
+		mIntervalMillis = unit.toMillis(interval);
+	}
+
+	public void setAnalyzeInterval(long interval, TimeUnit unit) {
+		mAnalyzeIntervalMillis = unit.toMillis(interval);
+	}
+
+	/**
+	 * Runs maintenance whenever the looper of calling thread is idle and
+	 * run interval has passed.
+	 */
+	public synchronized void install() {
+		if (Looper.myLooper() == null)
+			throw new IllegalArgumentException("Should install on looper thread");
+		if (mQueue != null)
+			return;
+		mQueue = Looper.myQueue();
+		mQueue.addIdleHandler(mIdleHandler);
+	}
+
+	/**
+	 * Stops idle runs. Should be called on the thread which installed it.
+	 */
+	public synchronized void uninstall() {
+		if (mQueue == null)
+			return;
+		mQueue.removeIdleHandler(mIdleHandler);
+		mQueue = null;
+	}
+
+	public synchronized long getTotalReclaimedPages() {
+		return mTotalReclaimedPages;
+	}
+
+	public synchronized long getTotalMillis() {
+		return mTotalMillis;
+	}
+
+	private synchronized boolean isDue() {
+		if (mRunning)
+			return false;
+		long now = SystemClock.elapsedRealtime();
+		if (mLastRun >= 0 && now - mLastRun < mIntervalMillis)
+			return false;
+		// Marked before execution so that following idles do not queue runs.
+		mLastRun = now;
+		return true;
+	}
+
+	/**
+	 * Runs maintenance on calling thread.
+	 * @return
+	 * 		Result of the run, or null if another run is in progress or the
+	 * 		database could not be maintained.
+	 */
+	public Result runNow() {
+		synchronized (this) {
+			if (mRunning)
+				return null;
+			mRunning = true;
+		}
+
+		long start = SystemClock.elapsedRealtime();
+		long deadline = start + mBudgetMillis;
+		DbManager manager = new DbManager(mHelper);
+		Result result = new Result();
+		SQLiteDatabase db = null;
+		try {
+			db = manager.open(DbManager.FLAG_OPEN_WRITABLE_DATABASE);
+			result.mCheckpointed = checkpoint(db);
+			result.mReclaimedPages = vacuum(db, deadline);
+			if (SystemClock.elapsedRealtime() < deadline && isAnalyzeDue())
+				result.mAnalyzed = analyze(db);
+		} catch (SQLException e) {
+			Log.e(TAG, "Maintenance failed : " + e.getMessage(), e);
+			result = null;
+		} finally {
+			if (db != null)
+				manager.release();
+			long elapsed = SystemClock.elapsedRealtime() - start;
+			synchronized (this) {
+				mRunning = false;
+				mTotalMillis += elapsed;
+				if (result != null) {
+					result.mElapsedMillis = elapsed;
+					mTotalReclaimedPages += result.mReclaimedPages;
+				}
+			}
+		}
+		if (result != null)
+			Log.d(TAG, "Maintenance : " + result);
+		return result;
+	}
+
+	private synchronized boolean isAnalyzeDue() {
+		return mLastAnalyze < 0 
+				|| SystemClock.elapsedRealtime() - mLastAnalyze >= mAnalyzeIntervalMillis;
+	}
+
+	private boolean checkpoint(SQLiteDatabase db) {
+		if (!"wal".equalsIgnoreCase(queryString(db, "PRAGMA journal_mode")))
+			return false;
+		execute(db, "PRAGMA wal_checkpoint(PASSIVE)");
+		return true;
+	}
+
+	/*
+	 * Frees pages in steps until free list is empty or budget is spent.
+	 */
+	private long vacuum(SQLiteDatabase db, long deadline) {
+		if (queryLong(db, "PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL)
+			return 0;
+		long before = queryLong(db, "PRAGMA freelist_count");
+		long free = before;
+		while (free > 0 && SystemClock.elapsedRealtime() < deadline) {
+			execute(db, "PRAGMA incremental_vacuum(" + VACUUM_STEP_PAGES + ")");
+			free = queryLong(db, "PRAGMA freelist_count");
+		}
+		return before - free;
+	}
+
+	private boolean analyze(SQLiteDatabase db) {
+		if (Build.VERSION.SDK_INT >= SDK_PRAGMA_OPTIMIZE)
+			execute(db, "PRAGMA optimize");
+		else
+			db.execSQL("ANALYZE");
+		synchronized (this) {
+			mLastAnalyze = SystemClock.elapsedRealtime();
+		}
+		return true;
+	}
+
+	/*
+	 * Pragmas may return rows, which `execSQL` rejects on some versions,
+	 * so they are stepped through a cursor.
+	 */
+	private static void execute(SQLiteDatabase db, String sql) {
+		Cursor cursor = db.rawQuery(sql, null);
+		try {
+			while (cursor.moveToNext()) {
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static String queryString(SQLiteDatabase db, String sql) {
+		Cursor cursor = db.rawQuery(sql, null);
+		try {
+			return cursor.moveToFirst() ? cursor.getString(0) : null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static long queryLong(SQLiteDatabase db, String sql) {
+		Cursor cursor = db.rawQuery(sql, null);
+		try {
+			return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Result of a maintenance run.
+	 */
+	public static class Result {
+		private long mReclaimedPages;
+		private long mElapsedMillis;
+		private boolean mCheckpointed;
+		private boolean mAnalyzed;
+
+		public long getReclaimedPages() {
+			return mReclaimedPages;
+		}
+
+		public long getElapsedMillis() {
+			return mElapsedMillis;
+		}
+
+		public boolean isCheckpointed() {
+			return mCheckpointed;
+		}
+
+		public boolean isAnalyzed() {
+			return mAnalyzed;
+		}
+
+		@Override
+		public String toString() {
+			return "reclaimed " + mReclaimedPages + " pages in " 
+					+ mElapsedMillis + "ms, checkpointed : " + mCheckpointed 
+					+ ", analyzed : " + mAnalyzed;
+		}
+	}
+}
@@ -1,18 +1,32 @@
 package com.daftshady.superandroidkit.database;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.Build;
 import android.util.Log;
 
 /**
  * DbManager
  * Provides easy interfaces to database actions and
  * wraps extra exceptions.
+ * Each DbManager is a session holding one lease on the database of its
+ * helper. Database is closed when the last session sharing the helper is
+ * closed. In concurrent mode, sessions on different threads read in
+ * parallel with a single writer through write-ahead logging.
  * @author parkilsu
  *
  */
@@ -21,37 +35,271 @@ public class DbManager {
 	public static final int FLAG_OPEN_WRITABLE_DATABASE = 1; 
 	public static final int FLAG_OPEN_READABLE_DATABASE = 2;
 
+	public static final int DEFAULT_BULK_CHUNK_SIZE = 500;
+
+	private static final String KEYSET_ROWID = "_keyset_rowid";
+
 	private final String TAG = "DbManager";
+
+	/*
+	 * Number of open sessions for each helper.
+	 */
+	private static final Map<SQLiteOpenHelper, Integer> sLeases =
+			new HashMap<SQLiteOpenHelper, Integer>();
+
+	/*
+	 * Observable queries of each helper, notified of commits by every
+	 * session of the helper.
+	 */
+	private static final Map<SQLiteOpenHelper, List<ObservableQuery<?>>> sObservables =
+			new HashMap<SQLiteOpenHelper, List<ObservableQuery<?>>>();
 	
-	private SQLiteDatabase mDatabase;
+	private volatile SQLiteDatabase mDatabase;
 	private SQLiteOpenHelper mDatabaseHelper;
 	
+	private final boolean mConcurrent;
+	private boolean mLeased = false;
+	
 	private String defaultNullColumnHack = null;
 
+	private QueryCache mQueryCache;
+
+	private DbInstrumentation mInstrumentation;
+
+	private IdentityMap mIdentityMap;
+
+	private boolean mParallelMapping;
+
+	private long mTransactionStart;
+
+	/*
+	 * Tables written in the current transaction.
+	 */
+	private final Set<String> mChangedTables = new LinkedHashSet<String>();
+
 	public DbManager(SQLiteOpenHelper helper){
+		this(helper, false);
+	}
+
+	/**
+	 * @param helper
+	 * 		Helper of the database.
+	 * @param concurrent
+	 * 		If true, write transactions don't block readers. Requires the
+	 * 		database to be opened in write-ahead logging mode, which can only
+	 * 		be set at open time : if `helper` is an `AbstractDbHelper` not
+	 * 		opened yet, it is enabled here, otherwise it should be set with
+	 * 		`AbstractDbHelper.setWriteAheadLogging` or
+	 * 		`SQLiteOpenHelper.setWriteAheadLoggingEnabled` before the first
+	 * 		open. Requires API 11 or higher, ignored on lower versions.
+	 */
+	public DbManager(SQLiteOpenHelper helper, boolean concurrent){
 		mDatabaseHelper = helper;
 		if (mDatabaseHelper == null)
 			throw new IllegalArgumentException("Helper cannot be null");
+		mConcurrent = concurrent
+				&& Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+		if (mConcurrent && helper instanceof AbstractDbHelper)
+			((AbstractDbHelper) helper).setWriteAheadLogging(true);
 	}
 	
-	public SQLiteDatabase open(int flag) {
-		switch(flag){
-			case FLAG_OPEN_READABLE_DATABASE:
-				mDatabase = mDatabaseHelper.getReadableDatabase();
-				break;
-			case FLAG_OPEN_WRITABLE_DATABASE:
-				mDatabase = mDatabaseHelper.getWritableDatabase();
-				break;
-			default:
-				throw new IllegalArgumentException("Flag argument error");
+	public synchronized SQLiteDatabase open(int flag) {
+		if (flag != FLAG_OPEN_READABLE_DATABASE && flag != FLAG_OPEN_WRITABLE_DATABASE)
+			throw new IllegalArgumentException("Flag argument error");
+		/*
+		 * Leased before the database is fetched, under the lock of leases,
+		 * so that the last session of another manager closing meanwhile
+		 * can't close the database returned here.
+		 */
+		synchronized (sLeases) {
+			boolean leased = mLeased;
+			if (!leased) {
+				acquireLease(mDatabaseHelper);
+				mLeased = true;
+			}
+			try {
+				if (flag == FLAG_OPEN_READABLE_DATABASE && !mConcurrent)
+					mDatabase = mDatabaseHelper.getReadableDatabase();
+				else
+					// In WAL mode, readers use the connection pool of the writable database.
+					mDatabase = mDatabaseHelper.getWritableDatabase();
+			} catch (RuntimeException e) {
+				if (!leased) {
+					mLeased = false;
+					releaseLease(mDatabaseHelper, true);
+				}
+				throw e;
+			}
 		}
 		return mDatabase;
 	}
 	
-	public void close() {
+	/**
+	 * Releases lease of this session. Database is closed only if no other
+	 * session on the same helper is open.
+	 */
+	public synchronized void close() {
+		if(mDatabase == null)
+			throw new IllegalArgumentException("Database not opened");
+		mDatabase = null;
+		if (mLeased) {
+			mLeased = false;
+			releaseLease(mDatabaseHelper, true);
+		}
+	}
+
+	/*
+	 * Releases lease of this session like `close`, but leaves the database
+	 * open even if this was the last session, for work running behind
+	 * sessions of the application.
+	 */
+	synchronized void release() {
+		if (mDatabase == null)
+			throw new IllegalArgumentException("Database not opened");
+		mDatabase = null;
+		if (mLeased) {
+			mLeased = false;
+			releaseLease(mDatabaseHelper, false);
+		}
+	}
+
+	public boolean isConcurrent() {
+		return mConcurrent;
+	}
+
+	/**
+	 * Enables result cache of `select` with `cache`, or disables it if null.
+	 * Writes through this session invalidate the cache by table.
+	 * Ignored below API 11.
+	 */
+	public void setQueryCache(QueryCache cache) {
+		mQueryCache = QueryCache.isSupported() ? cache : null;
+	}
+
+	public QueryCache getQueryCache() {
+		return mQueryCache;
+	}
+
+	/**
+	 * Maps models of `selectModels`, `selectPage` and `search` through
+	 * `identityMap`, or disables it if null. Writes through this session
+	 * evict models of the written tables.
+	 */
+	public void setIdentityMap(IdentityMap identityMap) {
+		mIdentityMap = identityMap;
+	}
+
+	public IdentityMap getIdentityMap() {
+		return mIdentityMap;
+	}
+
+	/**
+	 * If true, large results of `selectModels`, `selectPage` and `search`
+	 * are mapped on worker threads.
+	 * @see BaseCursorManager#setParallel(boolean)
+	 */
+	public void setParallelMapping(boolean parallelMapping) {
+		mParallelMapping = parallelMapping;
+	}
+
+	/**
+	 * Measures operations of this session with `instrumentation`, or stops
+	 * measuring if null. While instrumented, `select` reads the whole
+	 * result to count rows before returning the cursor.
+	 */
+	public void setInstrumentation(DbInstrumentation instrumentation) {
+		mInstrumentation = instrumentation;
+	}
+
+	public DbInstrumentation getInstrumentation() {
+		return mInstrumentation;
+	}
+
+	/*
+	 * Leases are taken and released under `sLeases`, which is also held
+	 * while the database is fetched in `open` and closed on the last
+	 * release.
+	 */
+	private static void acquireLease(SQLiteOpenHelper helper) {
+		synchronized (sLeases) {
+			Integer count = sLeases.get(helper);
+			sLeases.put(helper, count == null ? 1 : count + 1);
+		}
+	}
+
+	private static void releaseLease(SQLiteOpenHelper helper, boolean closeLast) {
+		synchronized (sLeases) {
+			Integer count = sLeases.get(helper);
+			if (count == null || count <= 1) {
+				sLeases.remove(helper);
+				if (closeLast)
+					helper.close();
+			} else {
+				sLeases.put(helper, count - 1);
+			}
+		}
+	}
+
+	/*
+	 * In concurrent mode, write transactions are started as IMMEDIATE so
+	 * that readers are not blocked while they run.
+	 */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	void beginTransaction() {
+		if (!mDatabase.inTransaction())
+			mTransactionStart = System.nanoTime();
+		if (mConcurrent)
+			mDatabase.beginTransactionNonExclusive();
+		else
+			mDatabase.beginTransaction();
+	}
+
+	/*
+	 * Ends transaction, and once the outermost transaction is over,
+	 * invalidates tables written in it again so that results read by other
+	 * sessions before the commit are not left cached, and notifies
+	 * observable queries of them.
+	 */
+	void endTransaction() {
+		mDatabase.endTransaction();
+		if (mDatabase.inTransaction())
+			return;
+		DbInstrumentation instrumentation = mInstrumentation;
+		if (instrumentation != null) {
+			instrumentation.report(mDatabase, DbEvent.Operation.TRANSACTION,
+					null, null, null, System.nanoTime() - mTransactionStart, 0);
+		}
+		if (mChangedTables.isEmpty())
+			return;
+		List<String> tables = new ArrayList<String>(mChangedTables);
+		mChangedTables.clear();
+		onTablesCommitted(tables);
+	}
+
+	private void onTablesCommitted(List<String> tables) {
+		QueryCache cache = mQueryCache;
+		IdentityMap identityMap = mIdentityMap;
+		for (String table : tables) {
+			if (cache != null)
+				cache.invalidate(table);
+			if (identityMap != null)
+				identityMap.evictTable(table);
+		}
+		List<ObservableQuery<?>> observables;
+		synchronized (sObservables) {
+			List<ObservableQuery<?>> registered = sObservables.get(mDatabaseHelper);
+			if (registered == null)
+				return;
+			observables = new ArrayList<ObservableQuery<?>>(registered);
+		}
+		for (ObservableQuery<?> observable : observables)
+			observable.onTablesChanged(tables);
+	}
+
+	SQLiteDatabase getDatabase() {
 		if(mDatabase == null)
 			throw new IllegalArgumentException("Database not opened");
-		mDatabase.close();
+		return mDatabase;
 	}
 	
 	public Cursor select(
@@ -67,30 +315,345 @@ public class DbManager {
 		if(mDatabase == null)
 			throw new IllegalArgumentException("Database not opened");
 		
+		QueryCache cache = mQueryCache;
 		try {
+			if (cache == null) {
+				return query(table, columns, selection, 
+						selectionArgs, groupBy, having, orderBy, limit);
+			}
+
+			QueryCache.Key key = new QueryCache.Key(
+					table, columns, selection,
+					selectionArgs, groupBy, having, orderBy, limit);
+			long start = System.nanoTime();
+			Cursor cached = cache.get(key);
+			if (cached != null) {
+				DbInstrumentation instrumentation = mInstrumentation;
+				if (instrumentation != null) {
+					instrumentation.report(mDatabase, DbEvent.Operation.SELECT,
+							table, SQLiteQueryBuilder.buildQueryString(false, table, 
+									columns, selection, groupBy, having, orderBy, limit), 
+							selectionArgs, System.nanoTime() - start,
+							cached.getCount(), true);
+				}
+				return cached;
+			}
+
+			long generation = cache.generation();
+			Cursor cursor = query(table, columns, selection, 
+					selectionArgs, groupBy, having, orderBy, limit);
+			// Uncommitted rows may still be rolled back.
+			if (cursor == null || mDatabase.inTransaction())
+				return cursor;
+			return cache.put(key, cursor, generation);
+		} catch (SQLException e) {
+			Log.e(TAG, "Selection failed : " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	private Cursor query(
+			String table, String[] columns, String selection,
+			String[] selectionArgs, String groupBy, String having,
+			String orderBy, String limit) {
+		DbInstrumentation instrumentation = mInstrumentation;
+		if (instrumentation == null) {
 			return mDatabase.query(
 						table, columns, selection, 
 						selectionArgs, groupBy, having, orderBy, limit
 						);
+		}
+
+		long start = System.nanoTime();
+		Cursor cursor;
+		int rowCount;
+		try {
+			cursor = mDatabase.query(
+						table, columns, selection, 
+						selectionArgs, groupBy, having, orderBy, limit
+						);
+			// Rows are read lazily, so count them to measure actual cost.
+			rowCount = cursor != null ? cursor.getCount() : -1;
+		} catch (SQLException e) {
+			instrumentation.report(mDatabase, DbEvent.Operation.SELECT, table,
+					SQLiteQueryBuilder.buildQueryString(false, table, columns,
+							selection, groupBy, having, orderBy, limit),
+					selectionArgs, System.nanoTime() - start, -1);
+			throw e;
+		}
+		long duration = System.nanoTime() - start;
+		instrumentation.report(mDatabase, DbEvent.Operation.SELECT, table, 
+				SQLiteQueryBuilder.buildQueryString(false, table, columns,
+						selection, groupBy, having, orderBy, limit), 
+				selectionArgs, duration, rowCount);
+		return cursor;
+	}
+	/**
+	 * Selects rows of `table` as models of `klass`. Only the columns mapped
+	 * into `klass` are queried.
+	 * @return
+	 * 		List of models, or null if selection failed.
+	 */
+	public <T> List<T> selectModels(
+			Class<T> klass, String table, String selection,
+			String[] selectionArgs, String orderBy, String limit) {
+		long generation = identityGeneration(klass, table);
+		Cursor cursor = select(
+				table, BaseCursorManager.getProjection(klass), selection,
+				selectionArgs, null, null, orderBy, limit);
+		if (cursor == null)
+			return null;
+		try {
+			return newCursorManager(cursor, klass, table, generation)
+					.retreiveData(klass);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Selects a page of rows ordered by `keyColumn`, starting after the row
+	 * the continuation token points to. Cost of a page doesn't depend on
+	 * how deep it is, unlike OFFSET.
+	 * Rows sharing a key value are ordered by the primary key column of the
+	 * model, or by rowid if it has none, so that none is skipped or
+	 * repeated across pages.
+	 * @param keyColumn
+	 * 		Ordering column. Should not be null.
+	 * @param descending
+	 * 		Order of pages.
+	 * @param pageSize
+	 * 		Maximum number of rows in a page.
+	 * @param continuation
+	 * 		Token of the previous page, or null for the first page.
+	 * @return
+	 * 		Page of models, or null if selection failed.
+	 */
+	public <T> Page<T> selectPage(
+			Class<T> klass, String table, DbColumn keyColumn,
+			String selection, String[] selectionArgs, boolean descending,
+			int pageSize, String continuation) {
+		if (pageSize <= 0)
+			throw new IllegalArgumentException("Page size should be positive");
+		if (keyColumn.getType() == DbEnum.Type.BLOB)
+			throw new IllegalArgumentException("BLOB column cannot be a key");
+
+		String key = keyColumn.getName();
+		DbColumn primaryKey = ModelWriter.of(klass).getPrimaryKey();
+		// Tiebreaker is selected under an alias, since SQLite names a rowid
+		// column after the INTEGER PRIMARY KEY it aliases.
+		String tiebreaker = null;
+		String tiebreakerColumn = null;
+		DbEnum.Type tiebreakerType = DbEnum.Type.LONG;
+		if (primaryKey == null) {
+			tiebreaker = "rowid";
+			tiebreakerColumn = KEYSET_ROWID;
+		} else if (!primaryKey.getName().equals(key)) {
+			tiebreaker = primaryKey.getName();
+			tiebreakerColumn = tiebreaker;
+			tiebreakerType = primaryKey.getType();
+		}
+
+		String direction = descending ? " DESC" : " ASC";
+		String order = key + direction
+				+ (tiebreaker != null ? ", " + tiebreaker + direction : "");
+		String where = selection;
+		String[] whereArgs = selectionArgs;
+		if (continuation != null) {
+			Object[] last = KeysetToken.decode(continuation, key, descending);
+			if ((tiebreaker != null) != (last[1] != null))
+				throw new IllegalArgumentException(
+						"Continuation token is of another ordering");
+			String comparison = descending ? " < " : " > ";
+			List<String> args = new ArrayList<String>();
+			if (selectionArgs != null)
+				args.addAll(Arrays.asList(selectionArgs));
+			String seek = key + comparison + KeysetToken.operand(last[0], args);
+			if (tiebreaker != null) {
+				seek = "(" + seek + " OR (" + key + " = " 
+						+ KeysetToken.operand(last[0], args) + " AND "
+						+ tiebreaker + comparison 
+						+ KeysetToken.operand(last[1], args) + "))";
+			}
+			where = selection != null ? 
+					"(" + selection + ") AND " + seek : seek;
+			whereArgs = args.toArray(new String[args.size()]);
+		}
+
+		String[] projection = projectionWithKey(klass, key);
+		if (tiebreakerColumn != null) {
+			projection = projectionWithKey(projection, tiebreaker.equals("rowid") ?
+					"rowid AS " + KEYSET_ROWID : tiebreaker);
+		}
+		long generation = identityGeneration(klass, table);
+		Cursor cursor = select(table, projection, where, whereArgs,
+				null, null, order, String.valueOf(pageSize));
+		if (cursor == null)
+			return null;
+		try {
+			List<T> items = newCursorManager(cursor, klass, table, generation)
+					.retreiveData(klass);
+			String next = null;
+			if (items.size() == pageSize && cursor.moveToLast()) {
+				Object lastTiebreaker = tiebreakerColumn != null ? 
+						KeysetToken.read(cursor, cursor.getColumnIndex(tiebreakerColumn),
+								tiebreakerType) : null;
+				next = KeysetToken.encode(key, descending,
+						KeysetToken.read(cursor, cursor.getColumnIndex(key),
+								keyColumn.getType()),
+						lastTiebreaker);
+			}
+			return new Page<T>(items, next);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Searches rows of `ftsTable` matching full-text `query`, ranked by
+	 * number of matches, as models of `klass`.
+	 * @param query
+	 * 		FTS `MATCH` expression like `word*` or `"exact phrase"`.
+	 * @return
+	 * 		List of models, or null if search failed.
+	 */
+	public <T> List<T> search(
+			Class<T> klass, FtsTable ftsTable, String query, String limit) {
+		if(mDatabase == null)
+			throw new IllegalArgumentException("Database not opened");
+
+		String sql = ftsTable.buildSearchQuery(
+				BaseCursorManager.getProjection(klass), limit);
+		String[] args = new String[] {query};
+		long generation = identityGeneration(klass, ftsTable.getTable());
+		Cursor cursor;
+		long start = System.nanoTime();
+		DbInstrumentation instrumentation = mInstrumentation;
+		try {
+			cursor = mDatabase.rawQuery(sql, args);
+			if (instrumentation != null) {
+				int rowCount = cursor.getCount();
+				instrumentation.report(mDatabase, DbEvent.Operation.SELECT,
+						ftsTable.getTable(), sql, args,
+						System.nanoTime() - start, rowCount);
+			}
 		} catch (SQLException e) {
-			Log.e(TAG, "Selection failed : " + e.getStackTrace(), e);
+			if (instrumentation != null) {
+				instrumentation.report(mDatabase, DbEvent.Operation.SELECT,
+						ftsTable.getTable(), sql, args,
+						System.nanoTime() - start, -1);
+			}
+			Log.e(TAG, "Search failed : " + e.getMessage(), e);
 			return null;
 		}
+		try {
+			return newCursorManager(cursor, klass, ftsTable.getTable(), generation)
+					.retreiveData(klass);
+		} finally {
+			cursor.close();
+		}
 	}
+
+	/**
+	 * Observes rows of `table` as models of `klass`. Query is run right
+	 * away, and again after writes through any session of the same helper
+	 * commit on `table`. Observer receives the change by `keyColumn`.
+	 * @param keyColumn
+	 * 		Column identifying rows, like primary key.
+	 * @param debounceMillis
+	 * 		Delay of a run after a commit, in which further commits are
+	 * 		merged into the same run.
+	 * @return
+	 * 		Observable query, which should be disposed when not needed.
+	 */
+	public <T> ObservableQuery<T> observe(
+			Class<T> klass, String table, DbColumn keyColumn,
+			String selection, String[] selectionArgs, String orderBy,
+			long debounceMillis, ObservableQuery.Observer<T> observer) {
+		ObservableQuery<T> observable = new ObservableQuery<T>(
+				mDatabaseHelper, mConcurrent, klass, table, keyColumn,
+				projectionWithKey(klass, keyColumn.getName()),
+				selection, selectionArgs, orderBy, debounceMillis, observer);
+		synchronized (sObservables) {
+			List<ObservableQuery<?>> observables = sObservables.get(mDatabaseHelper);
+			if (observables == null) {
+				observables = new ArrayList<ObservableQuery<?>>();
+				sObservables.put(mDatabaseHelper, observables);
+			}
+			observables.add(observable);
+		}
+		observable.schedule(0);
+		return observable;
+	}
+
+	static void removeObservableQuery(
+			SQLiteOpenHelper helper, ObservableQuery<?> observable) {
+		synchronized (sObservables) {
+			List<ObservableQuery<?>> observables = sObservables.get(helper);
+			if (observables == null)
+				return;
+			observables.remove(observable);
+			if (observables.isEmpty())
+				sObservables.remove(helper);
+		}
+	}
+
+	/*
+	 * Binds `klass` to tables of `table` in the identity map and returns
+	 * their generation, taken before rows are read.
+	 */
+	private long identityGeneration(Class<?> klass, String table) {
+		IdentityMap identityMap = mIdentityMap;
+		if (identityMap == null)
+			return 0;
+		Set<String> tables = QueryCache.parseTables(table);
+		for (String name : tables)
+			identityMap.bind(name, klass);
+		return identityMap.generation(tables);
+	}
+
+	private BaseCursorManager newCursorManager(
+			Cursor cursor, Class<?> klass, String table, long generation) {
+		BaseCursorManager manager = new BaseCursorManager(cursor);
+		manager.setParallel(mParallelMapping);
+		IdentityMap identityMap = mIdentityMap;
+		if (identityMap != null) {
+			manager.setIdentityMap(identityMap, 
+					QueryCache.parseTables(table), generation);
+		}
+		return manager;
+	}
+
+	/*
+	 * Projection of `klass` with `key` added if it is not mapped.
+	 */
+	private static String[] projectionWithKey(Class<?> klass, String key) {
+		return projectionWithKey(BaseCursorManager.getProjection(klass), key);
+	}
+
+	private static String[] projectionWithKey(String[] projection, String key) {
+		if (Arrays.asList(projection).contains(key))
+			return projection;
+		String[] withKey = new String[projection.length + 1];
+		System.arraycopy(projection, 0, withKey, 0, projection.length);
+		withKey[projection.length] = key;
+		return withKey;
+	}
+
 	public boolean insert(String tableName, ContentValues data) {
 		boolean success = false;
 		if(mDatabase == null)
 			throw new IllegalArgumentException("Database not opened");
 
 		try {
-			mDatabase.beginTransaction();
-			mDatabase.insertOrThrow(tableName, defaultNullColumnHack, data);
+			beginTransaction();
+			insertRow(tableName, data);
 			mDatabase.setTransactionSuccessful();
 			success = true;
 		} catch (SQLException e) {
-			Log.e(TAG, "Insertion failed : " + e.getStackTrace(), e);
+			Log.e(TAG, "Insertion failed : " + e.getMessage(), e);
 		} finally{
-			mDatabase.endTransaction();
+			endTransaction();
 		}
 		return success;
 	}
@@ -101,20 +664,140 @@ public class DbManager {
 			throw new IllegalArgumentException("Database not opened");
 
 		try {
-			mDatabase.beginTransaction();
+			beginTransaction();
 			for(ContentValues value:data){
-				mDatabase.insertOrThrow(tableName, defaultNullColumnHack, value);
+				insertRow(tableName, value);
 			}
 			mDatabase.setTransactionSuccessful();
 			success = true;
 		} catch (SQLException e) {
-			Log.e(TAG, "Insertion failed : " + e.getStackTrace(), e);
+			Log.e(TAG, "Insertion failed : " + e.getMessage(), e);
 		} finally{
-			mDatabase.endTransaction();
+			endTransaction();
 		}
 		return success;
 	}
 	
+	/**
+	 * Inserts rows through one compiled statement per column set.
+	 * Rows are committed in transactions of `DEFAULT_BULK_CHUNK_SIZE` rows.
+	 * @see #bulkInsert(String, List, int, int)
+	 */
+	public int bulkInsert(String tableName, List<ContentValues> data) {
+		return bulkInsert(tableName, data,
+				SQLiteDatabase.CONFLICT_NONE, DEFAULT_BULK_CHUNK_SIZE);
+	}
+
+	/**
+	 * Inserts rows through one compiled statement per column set, binding
+	 * values by position.
+	 * @param tableName
+	 * 		Table to insert into.
+	 * @param data
+	 * 		Rows to insert.
+	 * @param conflictAlgorithm
+	 * 		One of `SQLiteDatabase.CONFLICT_*`. `CONFLICT_REPLACE` and
+	 * 		`CONFLICT_IGNORE` give `INSERT OR REPLACE` and `INSERT OR IGNORE`.
+	 * @param chunkSize
+	 * 		Number of rows committed per transaction. Chunks committed
+	 * 		before a failure stay committed.
+	 * @return
+	 * 		Number of rows inserted, or -1 if insertion failed.
+	 */
+	public int bulkInsert(String tableName, List<ContentValues> data,
+			int conflictAlgorithm, int chunkSize) {
+		if(mDatabase == null)
+			throw new IllegalArgumentException("Database not opened");
+
+		long start = System.nanoTime();
+		int inserted = -1;
+		try {
+			inserted = new BulkInserter(this, tableName, conflictAlgorithm)
+					.insert(data, chunkSize);
+		} catch (SQLException e) {
+			Log.e(TAG, "Bulk insertion failed : " + e.getMessage(), e);
+		} finally {
+			onTableChanged(tableName);
+			DbInstrumentation instrumentation = mInstrumentation;
+			if (instrumentation != null) {
+				instrumentation.report(mDatabase, DbEvent.Operation.BULK_INSERT,
+						tableName, null, null, System.nanoTime() - start, inserted);
+			}
+		}
+		return inserted;
+	}
+
+	/**
+	 * Inserts `models` through `bulkInsert`, converted by `ModelWriter`.
+	 * Primary keys which are null or 0 are assigned by the database.
+	 * @return
+	 * 		Number of rows inserted, or -1 if insertion failed.
+	 */
+	public <T> int insertModels(Class<T> klass, String tableName, 
+			List<? extends T> models) {
+		return bulkInsert(tableName, ModelWriter.of(klass).toContentValues(models),
+				SQLiteDatabase.CONFLICT_NONE, DEFAULT_BULK_CHUNK_SIZE);
+	}
+
+	/**
+	 * Inserts `models`, replacing rows of same primary key or unique columns.
+	 * @see #insertModels(Class, String, List)
+	 */
+	public <T> int upsertModels(Class<T> klass, String tableName, 
+			List<? extends T> models) {
+		return bulkInsert(tableName, ModelWriter.of(klass).toContentValues(models),
+				SQLiteDatabase.CONFLICT_REPLACE, DEFAULT_BULK_CHUNK_SIZE);
+	}
+
+	/**
+	 * Updates rows of `models` by primary key, through one compiled
+	 * statement per column set. Rows are committed in transactions of
+	 * `DEFAULT_BULK_CHUNK_SIZE` rows.
+	 * @return
+	 * 		Number of rows updated, or -1 if update failed.
+	 */
+	public <T> int updateModels(Class<T> klass, String tableName, 
+			List<? extends T> models) {
+		if(mDatabase == null)
+			throw new IllegalArgumentException("Database not opened");
+
+		ModelWriter<T> writer = ModelWriter.of(klass);
+		DbColumn primaryKey = writer.getPrimaryKey();
+		if (primaryKey == null)
+			throw new IllegalArgumentException(
+					"Model " + klass.getName() + " has no primary key column");
+
+		long start = System.nanoTime();
+		int updated = -1;
+		BulkUpdater updater = new BulkUpdater(this, tableName, primaryKey.getName());
+		try {
+			int count = 0;
+			int size = models.size();
+			for (int chunk = 0; chunk < size; chunk += DEFAULT_BULK_CHUNK_SIZE) {
+				int end = Math.min(chunk + DEFAULT_BULK_CHUNK_SIZE, size);
+				beginTransaction();
+				try {
+					for (int i = chunk; i < end; i++) {
+						T model = models.get(i);
+						count += updater.update(writer.toContentValues(model),
+								writer.getPrimaryKeyValue(model));
+					}
+					mDatabase.setTransactionSuccessful();
+				} finally {
+					endTransaction();
+				}
+			}
+			updated = count;
+		} catch (SQLException e) {
+			Log.e(TAG, "Update failed : " + e.getMessage(), e);
+		} finally {
+			updater.close();
+			onTableChanged(tableName);
+			report(DbEvent.Operation.UPDATE, tableName, null, null, start, updated);
+		}
+		return updated;
+	}
+
 	public boolean update(String tableName, ContentValues data) {
 		if(mDatabase == null)
 			throw new IllegalArgumentException("Database not opened");
@@ -127,9 +810,9 @@ public class DbManager {
 			String whereClause, String[] whereArgs, boolean forceUpdate) {
 		boolean success = false;
 		try {
-			mDatabase.beginTransaction();
+			beginTransaction();
 			int numOfUpdates = 
-					mDatabase.update(tableName, data, whereClause, whereArgs);
+					updateRows(tableName, data, whereClause, whereArgs);
 			
 			if (forceUpdate && numOfUpdates == 0)
 				throw new SQLException("Nothing updated");
@@ -138,9 +821,9 @@ public class DbManager {
 				mDatabase.setTransactionSuccessful();
 			}
 		} catch (SQLException e) {
-			Log.e(TAG, "Update failed : " + e.getStackTrace());
+			Log.e(TAG, "Update failed : " + e.getMessage(), e);
 		} finally{
-			mDatabase.endTransaction();
+			endTransaction();
 		}
 		return success;
 	}
@@ -150,14 +833,93 @@ public class DbManager {
 			throw new IllegalArgumentException("Database not opened");
 		
 		try {
-			mDatabase.beginTransaction();
-			deleteRowCount = mDatabase.delete(tableName, whereClause, whereArgs);
+			beginTransaction();
+			deleteRowCount = deleteRows(tableName, whereClause, whereArgs);
 			mDatabase.setTransactionSuccessful();
 		} catch (SQLException e) {
-			Log.e(TAG, "Selection failed : " + e.getStackTrace(), e);
+			Log.e(TAG, "Deletion failed : " + e.getMessage(), e);
 		} finally{
-			mDatabase.endTransaction();
+			endTransaction();
 		}
 		return deleteRowCount;
 	}
+
+	/*
+	 * Row operations without transaction handling. Every write of DbManager
+	 * goes through these, so they are the place to hook write side effects.
+	 */
+	long insertRow(String tableName, ContentValues data) {
+		long start = System.nanoTime();
+		long rowId = -1;
+		try {
+			rowId = mDatabase.insertOrThrow(tableName, defaultNullColumnHack, data);
+		} finally {
+			if (mInstrumentation != null) {
+				report(DbEvent.Operation.INSERT, tableName,
+						DbInstrumentation.describeInsert(tableName, data), null,
+						start, rowId != -1 ? 1 : -1);
+			}
+		}
+		onTableChanged(tableName);
+		return rowId;
+	}
+
+	int updateRows(String tableName, ContentValues data,
+			String whereClause, String[] whereArgs) {
+		long start = System.nanoTime();
+		int count = -1;
+		try {
+			count = mDatabase.update(tableName, data, whereClause, whereArgs);
+		} finally {
+			if (mInstrumentation != null) {
+				report(DbEvent.Operation.UPDATE, tableName, 
+						DbInstrumentation.describeUpdate(tableName, data, whereClause), 
+						whereArgs, start, count);
+			}
+		}
+		if (count > 0)
+			onTableChanged(tableName);
+		return count;
+	}
+
+	int deleteRows(String tableName, String whereClause, String[] whereArgs) {
+		long start = System.nanoTime();
+		int count = -1;
+		try {
+			count = mDatabase.delete(tableName, whereClause, whereArgs);
+		} finally {
+			if (mInstrumentation != null) {
+				String sql = "DELETE FROM " + tableName 
+						+ (whereClause != null ? " WHERE " + whereClause : "");
+				report(DbEvent.Operation.DELETE, tableName, sql, whereArgs,
+						start, count);
+			}
+		}
+		if (count > 0)
+			onTableChanged(tableName);
+		return count;
+	}
+
+	private void report(DbEvent.Operation operation, String tableName,
+			String sql, String[] args, long start, int rowCount) {
+		DbInstrumentation instrumentation = mInstrumentation;
+		if (instrumentation != null) {
+			instrumentation.report(mDatabase, operation, tableName, sql, args,
+					System.nanoTime() - start, rowCount);
+		}
+	}
+
+	void onTableChanged(String tableName) {
+		if (!mDatabase.inTransaction()) {
+			onTablesCommitted(Collections.singletonList(tableName));
+			return;
+		}
+		mChangedTables.add(tableName);
+		QueryCache cache = mQueryCache;
+		if (cache != null)
+			cache.invalidate(tableName);
+		IdentityMap identityMap = mIdentityMap;
+		if (identityMap != null)
+			identityMap.evictTable(tableName);
+	}
 }
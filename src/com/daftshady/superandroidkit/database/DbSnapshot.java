@@ -0,0 +1,386 @@
+package com.daftshady.superandroidkit.database;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * DbSnapshot
+ * Streams tables of a database to and from a compact binary format through
+ * NIO channels, holding one buffer and one row in memory at a time.
+ * Export reads every added table inside one transaction, so the snapshot
+ * is consistent while other sessions keep writing. On a concurrent session
+ * from API 35, it is a read-only transaction on a reader connection, and
+ * writes go on during the export. Otherwise, as the framework has no
+ * deferred transaction before API 35, it is a write transaction of the
+ * session held for the whole stream, including time spent writing to
+ * `channel` : writes of other sessions wait until the export finishes,
+ * so a slow channel stalls every writer of the database.
+ * Import inserts rows through compiled statements of `BulkInserter`.
+ *
+ * Format is big-endian. After magic and version, each table is written as
+ * byte 1, table name, column count and column names, then rows each
+ * starting with byte 1 and ending with byte 0. Version 1 snapshots, which
+ * also carry a `DbEnum.Type` ordinal after each column name, are read.
+ * Byte 0 in place of a table ends the snapshot. Values are written with
+ * their storage class, so they are imported as they were stored. Strings
+ * and blobs are prefixed with their length.
+ *
+ */
+public class DbSnapshot {
+
+	private final String TAG = "DbSnapshot";
+
+	private static final int MAGIC = 0x53414b53;
+
+	private static final int VERSION = 2;
+
+	// Had column types, which values didn't need.
+	private static final int VERSION_TYPED_COLUMNS = 1;
+
+	// SQLiteDatabase.beginTransactionReadOnly ships from Android 15.
+	private static final int SDK_READ_ONLY_TRANSACTION = 35;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final byte VALUE_NULL = 0;
+	private static final byte VALUE_LONG = 1;
+	private static final byte VALUE_DOUBLE = 2;
+	private static final byte VALUE_STRING = 3;
+	private static final byte VALUE_BLOB = 4;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final DbManager mManager;
+
+	private final List<String> mTables = new ArrayList<String>();
+
+	private final List<DbColumn[]> mColumns = new ArrayList<DbColumn[]>();
+
+	/**
+	 * @param manager
+	 * 		Opened session. Import needs it to be writable.
+	 */
+	public DbSnapshot(DbManager manager) {
+		mManager = manager;
+	}
+
+	/**
+	 * Adds `table` to export, with its `columns`.
+	 */
+	public DbSnapshot addTable(String table, DbColumn... columns) {
+		if (columns.length == 0)
+			throw new IllegalArgumentException("Table should have columns");
+		mTables.add(table);
+		mColumns.add(columns);
+		return this;
+	}
+
+	/**
+	 * Writes added tables to `channel`.
+	 * @return
+	 * 		Number of rows written.
+	 */
+	public long exportTo(WritableByteChannel channel) throws IOException {
+		SQLiteDatabase db = mManager.getDatabase();
+		if (db == null)
+			throw new IllegalArgumentException("Database not opened");
+
+		Output output = new Output(channel);
+		output.putInt(MAGIC);
+		output.putInt(VERSION);
+		long rows = 0;
+		boolean readOnly = mManager.isConcurrent() 
+				&& Build.VERSION.SDK_INT >= SDK_READ_ONLY_TRANSACTION;
+		if (readOnly)
+			beginReadOnlyTransaction(db);
+		else
+			mManager.beginTransaction();
+		try {
+			for (int i = 0; i < mTables.size(); i++)
+				rows += exportTable(db, output, mTables.get(i), mColumns.get(i));
+			db.setTransactionSuccessful();
+		} finally {
+			if (readOnly)
+				db.endTransaction();
+			else
+				mManager.endTransaction();
+		}
+		output.putByte((byte) 0);
+		output.flush();
+		return rows;
+	}
+
+	@TargetApi(SDK_READ_ONLY_TRANSACTION)
+	private static void beginReadOnlyTransaction(SQLiteDatabase db) {
+		db.beginTransactionReadOnly();
+	}
+
+	private long exportTable(SQLiteDatabase db, Output output,
+			String table, DbColumn[] columns) throws IOException {
+		String[] names = new String[columns.length];
+		output.putByte((byte) 1);
+		output.putString(table);
+		output.putInt(columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			names[i] = columns[i].getName();
+			output.putString(names[i]);
+		}
+
+		long rows = 0;
+		Cursor cursor = db.query(table, names, null, null, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				output.putByte((byte) 1);
+				for (int i = 0; i < names.length; i++)
+					output.putValue(ValueReader.RAW.read(cursor, i));
+				rows++;
+			}
+		} finally {
+			cursor.close();
+		}
+		output.putByte((byte) 0);
+		return rows;
+	}
+
+	/**
+	 * Inserts every table of the snapshot read from `channel` into the
+	 * tables of same name. Rows are committed in transactions of
+	 * `DbManager.DEFAULT_BULK_CHUNK_SIZE` rows.
+	 * @param conflictAlgorithm
+	 * 		One of `SQLiteDatabase.CONFLICT_*`.
+	 * @return
+	 * 		Number of rows inserted, or -1 if insertion failed.
+	 */
+	public long importFrom(ReadableByteChannel channel, int conflictAlgorithm) 
+			throws IOException {
+		if (mManager.getDatabase() == null)
+			throw new IllegalArgumentException("Database not opened");
+
+		Input input = new Input(channel);
+		if (input.getInt() != MAGIC)
+			throw new IOException("Not a database snapshot");
+		int version = input.getInt();
+		if (version != VERSION && version != VERSION_TYPED_COLUMNS)
+			throw new IOException("Unknown snapshot version " + version);
+
+		long rows = 0;
+		try {
+			while (input.getByte() != 0)
+				rows += importTable(input, version, conflictAlgorithm);
+		} catch (SQLException e) {
+			Log.e(TAG, "Import failed : " + e.getMessage(), e);
+			return -1;
+		}
+		return rows;
+	}
+
+	private long importTable(Input input, int version, int conflictAlgorithm) 
+			throws IOException {
+		String table = input.getString();
+		String[] names = new String[input.getInt()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = input.getString();
+			if (version == VERSION_TYPED_COLUMNS)
+				input.getByte();
+		}
+
+		BulkInserter inserter = new BulkInserter(mManager, table, conflictAlgorithm);
+		SQLiteDatabase db = mManager.getDatabase();
+		long start = System.nanoTime();
+		long rows = 0;
+		try {
+			boolean more = input.getByte() != 0;
+			while (more) {
+				int chunk = 0;
+				mManager.beginTransaction();
+				try {
+					while (more && chunk < DbManager.DEFAULT_BULK_CHUNK_SIZE) {
+						ContentValues values = new ContentValues(names.length);
+						for (String name : names)
+							input.getValue(values, name);
+						if (inserter.insert(values) != -1)
+							rows++;
+						chunk++;
+						more = input.getByte() != 0;
+					}
+					db.setTransactionSuccessful();
+				} finally {
+					mManager.endTransaction();
+				}
+			}
+		} finally {
+			inserter.close();
+			mManager.onTableChanged(table);
+			DbInstrumentation instrumentation = mManager.getInstrumentation();
+			if (instrumentation != null) {
+				instrumentation.report(db, DbEvent.Operation.BULK_INSERT, table,
+						null, null, System.nanoTime() - start, (int) rows);
+			}
+		}
+		return rows;
+	}
+
+	/*
+	 * Buffered writer of snapshot values. Values larger than the buffer are
+	 * written to the channel directly.
+	 */
+	private static final class Output {
+		private final WritableByteChannel mChannel;
+		private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		Output(WritableByteChannel channel) {
+			mChannel = channel;
+		}
+
+		void putByte(byte value) throws IOException {
+			ensure(1);
+			mBuffer.put(value);
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			mBuffer.putInt(value);
+		}
+
+		void putString(String value) throws IOException {
+			putBytes(value.getBytes(UTF_8));
+		}
+
+		void putBytes(byte[] value) throws IOException {
+			putInt(value.length);
+			if (value.length <= mBuffer.capacity()) {
+				ensure(value.length);
+				mBuffer.put(value);
+				return;
+			}
+			flush();
+			ByteBuffer wrapped = ByteBuffer.wrap(value);
+			while (wrapped.hasRemaining())
+				mChannel.write(wrapped);
+		}
+
+		void putValue(Object value) throws IOException {
+			if (value == null) {
+				putByte(VALUE_NULL);
+			} else if (value instanceof Long) {
+				ensure(9);
+				mBuffer.put(VALUE_LONG).putLong((Long) value);
+			} else if (value instanceof Double) {
+				ensure(9);
+				mBuffer.put(VALUE_DOUBLE).putDouble((Double) value);
+			} else if (value instanceof byte[]) {
+				putByte(VALUE_BLOB);
+				putBytes((byte[]) value);
+			} else {
+				putByte(VALUE_STRING);
+				putString(value.toString());
+			}
+		}
+
+		private void ensure(int size) throws IOException {
+			if (mBuffer.remaining() < size)
+				flush();
+		}
+
+		void flush() throws IOException {
+			mBuffer.flip();
+			while (mBuffer.hasRemaining())
+				mChannel.write(mBuffer);
+			mBuffer.clear();
+		}
+	}
+
+	/*
+	 * Buffered reader of snapshot values.
+	 */
+	private static final class Input {
+		private final ReadableByteChannel mChannel;
+		private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		Input(ReadableByteChannel channel) {
+			mChannel = channel;
+			mBuffer.flip();
+		}
+
+		byte getByte() throws IOException {
+			require(1);
+			return mBuffer.get();
+		}
+
+		int getInt() throws IOException {
+			require(4);
+			return mBuffer.getInt();
+		}
+
+		String getString() throws IOException {
+			return new String(getBytes(), UTF_8);
+		}
+
+		byte[] getBytes() throws IOException {
+			int length = getInt();
+			if (length < 0)
+				throw new IOException("Corrupted snapshot");
+			byte[] value = new byte[length];
+			int copied = Math.min(length, mBuffer.remaining());
+			mBuffer.get(value, 0, copied);
+			if (copied < length) {
+				ByteBuffer wrapped = ByteBuffer.wrap(value, copied, length - copied);
+				while (wrapped.hasRemaining()) {
+					if (mChannel.read(wrapped) < 0)
+						throw new EOFException("Snapshot ended unexpectedly");
+				}
+			}
+			return value;
+		}
+
+		void getValue(ContentValues values, String name) throws IOException {
+			byte type = getByte();
+			switch (type) {
+			case VALUE_NULL:
+				values.putNull(name);
+				break;
+			case VALUE_LONG:
+				require(8);
+				values.put(name, mBuffer.getLong());
+				break;
+			case VALUE_DOUBLE:
+				require(8);
+				values.put(name, mBuffer.getDouble());
+				break;
+			case VALUE_STRING:
+				values.put(name, getString());
+				break;
+			case VALUE_BLOB:
+				values.put(name, getBytes());
+				break;
+			default:
+				throw new IOException("Corrupted snapshot");
+			}
+		}
+
+		private void require(int size) throws IOException {
+			if (mBuffer.remaining() >= size)
+				return;
+			mBuffer.compact();
+			while (mBuffer.position() < size) {
+				if (mChannel.read(mBuffer) < 0)
+					throw new EOFException("Snapshot ended unexpectedly");
+			}
+			mBuffer.flip();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * DbStats
+ * `DbListener` aggregating latency histograms and row counts per
+ * statement, and keeping recent slow operations. Statements are
+ * normalized, so that statements differing only by literal values or by
+ * the number of placeholders in a list share a histogram.
+ *
+ */
+public class DbStats implements DbListener {
+
+	private static final int MAX_SLOW_EVENTS = 32;
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+	// Digits preceded by a word character belong to identifiers.
+	private static final Pattern NUMERIC_LITERAL = 
+			Pattern.compile("(?<![\\w.])\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?\\b");
+
+	private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private final Map<String, LatencyHistogram> mHistograms =
+			new HashMap<String, LatencyHistogram>();
+
+	private final List<DbEvent> mSlowEvents = new ArrayList<DbEvent>();
+
+	@Override
+	public void onEvent(DbEvent event) {
+		LatencyHistogram histogram = histogram(normalize(event.getStatement()));
+		if (event.isCached())
+			histogram.recordCached(event.getRowCount());
+		else
+			histogram.record(event.getDurationNanos(), event.getRowCount());
+		if (event.isSlow()) {
+			synchronized (mSlowEvents) {
+				if (mSlowEvents.size() == MAX_SLOW_EVENTS)
+					mSlowEvents.remove(0);
+				mSlowEvents.add(event);
+			}
+		}
+	}
+
+	/**
+	 * Returns histogram of `statement`, normalized.
+	 * @see DbEvent#getStatement()
+	 */
+	public LatencyHistogram getHistogram(String statement) {
+		return histogram(normalize(statement));
+	}
+
+	/**
+	 * Returns histograms keyed by normalized statement.
+	 */
+	public Map<String, LatencyHistogram> getHistograms() {
+		synchronized (mHistograms) {
+			return new HashMap<String, LatencyHistogram>(mHistograms);
+		}
+	}
+
+	/**
+	 * Returns recent slow operations, oldest first.
+	 */
+	public List<DbEvent> getSlowEvents() {
+		synchronized (mSlowEvents) {
+			return new ArrayList<DbEvent>(mSlowEvents);
+		}
+	}
+
+	public void reset() {
+		synchronized (mHistograms) {
+			mHistograms.clear();
+		}
+		synchronized (mSlowEvents) {
+			mSlowEvents.clear();
+		}
+	}
+
+	/**
+	 * Replaces string and numeric literals with `?`, collapses lists of
+	 * placeholders into one and whitespace into single spaces.
+	 */
+	public static String normalize(String statement) {
+		String normalized = STRING_LITERAL.matcher(statement).replaceAll("?");
+		normalized = NUMERIC_LITERAL.matcher(normalized).replaceAll("?");
+		normalized = PLACEHOLDER_LIST.matcher(normalized).replaceAll("?");
+		return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+	}
+
+	private LatencyHistogram histogram(String key) {
+		synchronized (mHistograms) {
+			LatencyHistogram histogram = mHistograms.get(key);
+			if (histogram == null) {
+				histogram = new LatencyHistogram();
+				mHistograms.put(key, histogram);
+			}
+			return histogram;
+		}
+	}
+}
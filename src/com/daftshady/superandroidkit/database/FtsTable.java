@@ -0,0 +1,158 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * FtsTable
+ * Full-text index of the searchable STRING columns of a table. It is a
+ * shadow FTS3 virtual table named `<table>_fts`, whose `docid` is the
+ * `rowid` of the content table, kept in sync by triggers.
+ * The content table should have an INTEGER PRIMARY KEY column. Otherwise
+ * rowids may change on VACUUM and no longer match `docid`s, so `create`
+ * rejects such tables.
+ *
+ */
+public class FtsTable {
+
+	public static final String SUFFIX = "_fts";
+
+	private final String mTable;
+
+	private final String[] mColumns;
+
+	/**
+	 * @param table
+	 * 		Content table.
+	 * @param columns
+	 * 		Columns of the content table. Only searchable STRING columns
+	 * 		are indexed.
+	 */
+	public FtsTable(String table, DbColumn[] columns) {
+		List<String> searchable = new ArrayList<String>();
+		for (DbColumn column : columns) {
+			if (column.isSearchable() && column.getType() == DbEnum.Type.STRING)
+				searchable.add(column.getName());
+		}
+		if (searchable.isEmpty())
+			throw new IllegalArgumentException(
+					"Table " + table + " has no searchable STRING column");
+		mTable = table;
+		mColumns = searchable.toArray(new String[searchable.size()]);
+	}
+
+	public String getTable() {
+		return mTable;
+	}
+
+	public String getFtsTable() {
+		return mTable + SUFFIX;
+	}
+
+	/**
+	 * Creates the virtual table if it doesn't exist, indexing rows already
+	 * in the content table, and (re)creates the triggers.
+	 * `INSERT OR REPLACE` deletes the replaced row without firing delete
+	 * triggers, so the insert trigger removes an entry of the same docid
+	 * first. The update trigger only fires on updates of indexed columns
+	 * or of the rowid.
+	 */
+	public void create(SQLiteDatabase db) {
+		String fts = getFtsTable();
+		String key = getRowidAlias(db);
+		String columns = join("", mColumns);
+		boolean exists = DatabaseUtils.longForQuery(db,
+				"SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+				new String[] {fts}) > 0;
+		if (!exists) {
+			db.execSQL("CREATE VIRTUAL TABLE " + fts + " USING fts3(" + columns + ")");
+			db.execSQL("INSERT INTO " + fts + " (docid, " + columns + ") SELECT rowid, "
+					+ columns + " FROM " + mTable);
+		}
+
+		String insert = "INSERT INTO " + fts + " (docid, " + columns 
+				+ ") VALUES (new.rowid, " + join("new.", mColumns) + ");";
+		String delete = "DELETE FROM " + fts + " WHERE docid = old.rowid;";
+		String replace = "DELETE FROM " + fts + " WHERE docid = new.rowid;";
+		// Dropped first, so that triggers of older versions are replaced.
+		db.execSQL("DROP TRIGGER IF EXISTS " + fts + "_ai");
+		db.execSQL("DROP TRIGGER IF EXISTS " + fts + "_au");
+		db.execSQL("DROP TRIGGER IF EXISTS " + fts + "_ad");
+		db.execSQL("CREATE TRIGGER " + fts + "_ai AFTER INSERT ON " 
+				+ mTable + " BEGIN " + replace + " " + insert + " END");
+		db.execSQL("CREATE TRIGGER " + fts + "_au AFTER UPDATE OF " + key + ", " 
+				+ columns + " ON " + mTable + " BEGIN " + delete + " " + replace 
+				+ " " + insert + " END");
+		db.execSQL("CREATE TRIGGER " + fts + "_ad AFTER DELETE ON " 
+				+ mTable + " BEGIN " + delete + " END");
+	}
+
+	/*
+	 * Returns the INTEGER PRIMARY KEY column aliasing rowid, which is only
+	 * stable across VACUUM if it is aliased.
+	 */
+	private String getRowidAlias(SQLiteDatabase db) {
+		Cursor cursor = db.rawQuery("PRAGMA table_info(" + mTable + ")", null);
+		int keyColumns = 0;
+		String key = null;
+		boolean integerKey = false;
+		try {
+			int nameIndex = cursor.getColumnIndex("name");
+			int typeIndex = cursor.getColumnIndex("type");
+			int pkIndex = cursor.getColumnIndex("pk");
+			while (cursor.moveToNext()) {
+				if (cursor.getInt(pkIndex) > 0) {
+					keyColumns++;
+					key = cursor.getString(nameIndex);
+					integerKey = "INTEGER".equalsIgnoreCase(cursor.getString(typeIndex));
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		if (keyColumns != 1 || !integerKey)
+			throw new IllegalArgumentException("Table " + mTable 
+					+ " should have an INTEGER PRIMARY KEY to be indexed");
+		return key;
+	}
+
+	/**
+	 * Builds search query of `projection` columns of the content table,
+	 * ranked by number of matches. `MATCH` expression is the first argument.
+	 * `offsets()` gives four integers per match, so the number of matches
+	 * is its number of space separated integers divided by four.
+	 */
+	String buildSearchQuery(String[] projection, String limit) {
+		String fts = getFtsTable();
+		StringBuilder sql = new StringBuilder("SELECT ");
+		for (int i = 0; i < projection.length; i++) {
+			if (i > 0)
+				sql.append(", ");
+			sql.append(mTable).append('.').append(projection[i])
+					.append(" AS ").append(projection[i]);
+		}
+		sql.append(" FROM ").append(mTable).append(" JOIN ").append(fts)
+				.append(" ON ").append(mTable).append(".rowid = ")
+				.append(fts).append(".docid WHERE ").append(fts)
+				.append(" MATCH ? ORDER BY (length(offsets(").append(fts)
+				.append(")) - length(replace(offsets(").append(fts)
+				.append("), ' ', '')) + 1) / 4 DESC");
+		if (limit != null)
+			sql.append(" LIMIT ").append(limit);
+		return sql.toString();
+	}
+
+	private static String join(String prefix, String[] columns) {
+		StringBuilder joined = new StringBuilder();
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0)
+				joined.append(", ");
+			joined.append(prefix).append(columns[i]);
+		}
+		return joined.toString();
+	}
+}
@@ -0,0 +1,188 @@
+package com.daftshady.superandroidkit.database;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.daftshady.superandroidkit.datastructure.LruMap;
+
+/**
+ * IdentityMap
+ * Cache of mapped models by model class and primary key, so that the same
+ * row is mapped to the same instance while it is cached. Models are held
+ * by weak or soft references, and the number of entries is bounded in
+ * least recently used order.
+ * Models of a table are evicted on writes to the table through
+ * `DbManager`. Only models with a primary key `DbColumn` mapped with
+ * reflection from every column they map are cached, so that a partial
+ * projection never caches nor receives an incompletely mapped instance.
+ *
+ */
+public class IdentityMap {
+
+	private final LruMap<Key, Reference<Object>> mModels;
+
+	private final boolean mSoft;
+
+	/*
+	 * Model classes read from each table. Also guards generations.
+	 */
+	private final Map<String, Set<Class<?>>> mTableClasses =
+			new HashMap<String, Set<Class<?>>>();
+
+	/*
+	 * Incremented on every eviction of a table, so that a model mapped
+	 * from a row read before a write is not cached after it.
+	 */
+	private final Map<String, Long> mTableGenerations = new HashMap<String, Long>();
+
+	/*
+	 * Incremented on `clear`, for every table.
+	 */
+	private long mGeneration;
+
+	/**
+	 * @param maxEntries
+	 * 		Maximum number of cached models.
+	 * @param soft
+	 * 		If true, models are held by soft references and kept until
+	 * 		memory runs short. Otherwise by weak references, kept while
+	 * 		the application holds them.
+	 */
+	public IdentityMap(int maxEntries, boolean soft) {
+		mModels = new LruMap<Key, Reference<Object>>(maxEntries);
+		mSoft = soft;
+	}
+
+	/**
+	 * Returns cached model of `klass` with primary key `key`, or null.
+	 */
+	public <T> T get(Class<T> klass, Object key) {
+		Key mapKey = new Key(klass, key);
+		Reference<Object> reference = mModels.get(mapKey);
+		if (reference == null)
+			return null;
+		Object model = reference.get();
+		if (model == null)
+			mModels.remove(mapKey);
+		return klass.cast(model);
+	}
+
+	public <T> void put(Class<T> klass, Object key, T model) {
+		mModels.put(new Key(klass, key), mSoft ? 
+				new SoftReference<Object>(model) : 
+				new WeakReference<Object>(model));
+	}
+
+	/**
+	 * Caches `model` like `put`, unless a table of `tables` was evicted
+	 * since `generation` was taken from them.
+	 */
+	public <T> void put(Class<T> klass, Object key, T model, 
+			Set<String> tables, long generation) {
+		synchronized (mTableClasses) {
+			if (generation(tables) == generation)
+				put(klass, key, model);
+		}
+	}
+
+	/**
+	 * Returns generation of `tables`, which changes whenever one of them
+	 * is evicted. Should be taken before rows are read from them.
+	 */
+	public long generation(Set<String> tables) {
+		synchronized (mTableClasses) {
+			// Generations only grow, so their sum changes with any of them.
+			long generation = mGeneration;
+			for (String table : tables) {
+				Long tableGeneration = mTableGenerations.get(table);
+				if (tableGeneration != null)
+					generation += tableGeneration;
+			}
+			return generation;
+		}
+	}
+
+	public void remove(Class<?> klass, Object key) {
+		mModels.remove(new Key(klass, key));
+	}
+
+	/**
+	 * Records that models of `klass` are read from `table`.
+	 */
+	public void bind(String table, Class<?> klass) {
+		synchronized (mTableClasses) {
+			Set<Class<?>> classes = mTableClasses.get(table);
+			if (classes == null) {
+				classes = new HashSet<Class<?>>();
+				mTableClasses.put(table, classes);
+			}
+			classes.add(klass);
+		}
+	}
+
+	/**
+	 * Evicts models of the classes read from `table`.
+	 */
+	public void evictTable(String table) {
+		Set<Class<?>> classes;
+		synchronized (mTableClasses) {
+			Long generation = mTableGenerations.get(table);
+			mTableGenerations.put(table, generation != null ? generation + 1 : 1);
+			classes = mTableClasses.get(table);
+			if (classes == null)
+				return;
+			classes = new HashSet<Class<?>>(classes);
+		}
+		for (Key key : mModels.keys()) {
+			if (classes.contains(key.mKlass))
+				mModels.remove(key);
+		}
+	}
+
+	public void clear() {
+		synchronized (mTableClasses) {
+			mGeneration++;
+		}
+		mModels.clear();
+	}
+
+	public long getHitCount() {
+		return mModels.hitCount();
+	}
+
+	public long getMissCount() {
+		return mModels.missCount();
+	}
+
+	public int size() {
+		return mModels.count();
+	}
+
+	private static final class Key {
+		private final Class<?> mKlass;
+		private final Object mKey;
+
+		Key(Class<?> klass, Object key) {
+			mKlass = klass;
+			mKey = key;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * mKlass.hashCode() + mKey.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return mKlass == other.mKlass && mKey.equals(other.mKey);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.util.Log;
+
+/**
+ * IndexAdvisor
+ * Debugging `DbListener` which reads query plans of selections and
+ * deletions, and reports statements doing full table scans, which
+ * usually means a missing index. Each statement is reported once.
+ * Explaining every statement is costly, so it should only be installed
+ * in debug builds.
+ *
+ */
+public class IndexAdvisor implements DbListener {
+
+	private final String TAG = "IndexAdvisor";
+
+	private final Set<String> mReported = new HashSet<String>();
+
+	private final List<String> mFindings = new ArrayList<String>();
+
+	/**
+	 * Creates an advisor and makes `instrumentation` explain every
+	 * selection and deletion for it.
+	 */
+	public static IndexAdvisor install(DbInstrumentation instrumentation) {
+		IndexAdvisor advisor = new IndexAdvisor();
+		instrumentation.setExplainAll(true);
+		instrumentation.addListener(advisor);
+		return advisor;
+	}
+
+	@Override
+	public void onEvent(DbEvent event) {
+		String plan = event.getQueryPlan();
+		if (plan == null)
+			return;
+		for (String step : plan.split("\n")) {
+			String table = scannedTable(step);
+			if (table == null)
+				continue;
+			String finding = "Full scan of " + table + " : " + event.getStatement();
+			synchronized (this) {
+				if (!mReported.add(finding))
+					continue;
+				mFindings.add(finding);
+			}
+			Log.w(TAG, finding);
+		}
+	}
+
+	/**
+	 * Returns reported full scans, one per table and statement.
+	 */
+	public synchronized List<String> getFindings() {
+		return new ArrayList<String>(mFindings);
+	}
+
+	/*
+	 * Plan step of a full scan is `SCAN TABLE <table>` on older SQLite
+	 * and `SCAN <table>` on newer one. Scans using an index are not, nor
+	 * are lookups of virtual tables such as full-text indexes
+	 * (`SCAN <table> VIRTUAL TABLE INDEX n:`), which can't be indexed.
+	 */
+	private static String scannedTable(String step) {
+		String detail = step.trim();
+		if (!detail.startsWith("SCAN ") || detail.contains(" USING ")
+				|| detail.contains(" VIRTUAL TABLE INDEX "))
+			return null;
+		String[] words = detail.split("\\s+");
+		String table = "TABLE".equals(words[1]) && words.length > 2 ? 
+				words[2] : words[1];
+		if (table.startsWith("sqlite_") || "SUBQUERY".equals(table)
+				|| "CONSTANT".equals(table))
+			return null;
+		return table;
+	}
+}
@@ -0,0 +1,145 @@
+package com.daftshady.superandroidkit.database;
+
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+import android.database.Cursor;
+import android.util.Base64;
+
+/**
+ * KeysetToken
+ * Continuation token of keyset pagination. It records the key column,
+ * direction, and the last key and tiebreaker values of a page with their
+ * storage types, so that numeric keys are compared as numbers without
+ * losing precision.
+ *
+ */
+class KeysetToken {
+
+	private static final String VERSION = "2";
+
+	private static final String SEPARATOR = "\n";
+
+	private static final int FLAGS = Base64.URL_SAFE | Base64.NO_WRAP;
+
+	private static final String TYPE_LONG = "i";
+	private static final String TYPE_DOUBLE = "r";
+	private static final String TYPE_STRING = "s";
+
+	/**
+	 * @param lastTiebreaker
+	 * 		Tiebreaker value of last row, or null if the key is unique.
+	 */
+	static String encode(String keyColumn, boolean descending,
+			Object lastKey, Object lastTiebreaker) {
+		if (lastKey == null)
+			throw new IllegalArgumentException(
+					"Key column " + keyColumn + " cannot be null");
+		StringBuilder token = new StringBuilder();
+		token.append(VERSION).append(SEPARATOR).append(keyColumn)
+				.append(SEPARATOR).append(descending ? "d" : "a")
+				.append(SEPARATOR).append(encodeValue(lastKey));
+		if (lastTiebreaker != null)
+			token.append(SEPARATOR).append(encodeValue(lastTiebreaker));
+		return Base64.encodeToString(utf8(token.toString()), FLAGS);
+	}
+
+	/**
+	 * Returns last key value of `token` and its tiebreaker value, which is
+	 * null if the key is unique, checking that it was made for the same key
+	 * column and direction.
+	 */
+	static Object[] decode(String token, String keyColumn, boolean descending) {
+		String[] parts;
+		try {
+			parts = new String(Base64.decode(token, FLAGS), "UTF-8")
+					.split(SEPARATOR);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid continuation token", e);
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+		if (parts.length < 4 || parts.length > 5 || !VERSION.equals(parts[0]))
+			throw new IllegalArgumentException("Invalid continuation token");
+		if (!keyColumn.equals(parts[1])
+				|| !(descending ? "d" : "a").equals(parts[2]))
+			throw new IllegalArgumentException(
+					"Continuation token is of another ordering");
+		return new Object[] {
+				decodeValue(parts[3]),
+				parts.length == 5 ? decodeValue(parts[4]) : null
+		};
+	}
+
+	/**
+	 * Reads a key cell of a `type` column with its storage type.
+	 */
+	static Object read(Cursor cursor, int columnIndex, DbEnum.Type type) {
+		if (cursor.isNull(columnIndex))
+			return null;
+		switch (type) {
+		case INTEGER:
+		case LONG:
+		case BOOLEAN:
+		case TIMESTAMP:
+		case BLOB_STREAM:
+			return cursor.getLong(columnIndex);
+		case DOUBLE:
+		case FLOAT:
+			return cursor.getDouble(columnIndex);
+		default:
+			return cursor.getString(columnIndex);
+		}
+	}
+
+	/**
+	 * Returns SQL operand of `value`. Numbers are inlined as literals so that
+	 * they are not compared as text, strings are bound through `args`.
+	 */
+	static String operand(Object value, List<String> args) {
+		if (value instanceof Long)
+			return value.toString();
+		if (value instanceof Double) {
+			double number = (Double) value;
+			if (Double.isInfinite(number))
+				return number > 0 ? "9e999" : "-9e999";
+			return Double.toString(number);
+		}
+		args.add((String) value);
+		return "?";
+	}
+
+	private static String encodeValue(Object value) {
+		if (value instanceof Long)
+			return TYPE_LONG + value;
+		if (value instanceof Double)
+			return TYPE_DOUBLE + Double.doubleToLongBits((Double) value);
+		return TYPE_STRING + Base64.encodeToString(utf8(value.toString()), FLAGS);
+	}
+
+	private static Object decodeValue(String value) {
+		try {
+			String type = value.substring(0, 1);
+			String body = value.substring(1);
+			if (TYPE_LONG.equals(type))
+				return Long.parseLong(body);
+			if (TYPE_DOUBLE.equals(type))
+				return Double.longBitsToDouble(Long.parseLong(body));
+			if (TYPE_STRING.equals(type))
+				return new String(Base64.decode(body, FLAGS), "UTF-8");
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid continuation token", e);
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+		throw new IllegalArgumentException("Invalid continuation token");
+	}
+
+	private static byte[] utf8(String value) {
+		try {
+			return value.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
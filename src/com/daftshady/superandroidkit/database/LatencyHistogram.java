@@ -0,0 +1,103 @@
+package com.daftshady.superandroidkit.database;
+
+/**
+ * LatencyHistogram
+ * Thread-safe histogram of durations in power-of-two microsecond buckets.
+ * Bucket `i` counts durations below `2^i` microseconds.
+ *
+ */
+public class LatencyHistogram {
+
+	public static final int BUCKET_COUNT = 32;
+
+	private final long[] mBuckets = new long[BUCKET_COUNT];
+
+	private long mCount;
+
+	private long mTotalNanos;
+
+	private long mMaxNanos;
+
+	private long mRowCount;
+
+	private long mFailureCount;
+
+	private long mCachedCount;
+
+	public synchronized void record(long durationNanos, int rowCount) {
+		long micros = durationNanos / 1000;
+		int bucket = 64 - Long.numberOfLeadingZeros(micros);
+		mBuckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+		mCount++;
+		mTotalNanos += durationNanos;
+		mMaxNanos = Math.max(mMaxNanos, durationNanos);
+		if (rowCount > 0)
+			mRowCount += rowCount;
+		else if (rowCount < 0)
+			mFailureCount++;
+	}
+
+	/**
+	 * Counts a selection served from `QueryCache`. It is kept out of the
+	 * buckets, which measure database work.
+	 */
+	public synchronized void recordCached(int rowCount) {
+		mCachedCount++;
+		if (rowCount > 0)
+			mRowCount += rowCount;
+	}
+
+	/**
+	 * Number of recorded operations which failed.
+	 */
+	public synchronized long getFailureCount() {
+		return mFailureCount;
+	}
+
+	/**
+	 * Number of selections served from `QueryCache`, not in `getCount`.
+	 */
+	public synchronized long getCachedCount() {
+		return mCachedCount;
+	}
+
+	public synchronized long getCount() {
+		return mCount;
+	}
+
+	public synchronized long getTotalNanos() {
+		return mTotalNanos;
+	}
+
+	public synchronized long getMaxNanos() {
+		return mMaxNanos;
+	}
+
+	/**
+	 * Total number of rows of recorded operations.
+	 */
+	public synchronized long getRowCount() {
+		return mRowCount;
+	}
+
+	public synchronized long[] getBuckets() {
+		return mBuckets.clone();
+	}
+
+	/**
+	 * Returns upper bound in microseconds of the bucket holding
+	 * `percentile` (0 to 100) of recorded durations.
+	 */
+	public synchronized long getPercentileMicros(double percentile) {
+		if (mCount == 0)
+			return 0;
+		long rank = (long) Math.ceil(mCount * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += mBuckets[i];
+			if (seen >= rank)
+				return 1L << i;
+		}
+		return 1L << (BUCKET_COUNT - 1);
+	}
+}
@@ -0,0 +1,275 @@
+package com.daftshady.superandroidkit.database;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.database.Cursor;
+
+import com.daftshady.superandroidkit.utils.StringUtils;
+
+/**
+ * MappingPlan
+ * Row mapping plan of a `BaseDbModel` class. Reflection (column declaration,
+ * field and setter lookup) is done only once per model class, and column
+ * indexes are resolved only once per cursor shape. If the model has a
+ * `RowMapper`, reflection is skipped altogether and rows are mapped by it.
+ *
+ */
+final class MappingPlan<T> {
+
+	private static final Map<Class<?>, MappingPlan<?>> sPlans =
+			new HashMap<Class<?>, MappingPlan<?>>();
+
+	private final Class<T> mKlass;
+
+	private final RowMapper<T> mMapper;
+
+	private final String[] mColumnNames;
+
+	private final DbColumn[] mColumns;
+
+	private final Accessor[] mAccessors;
+
+	private final ValueReader[] mReaders;
+
+	private final int mPrimaryKey;
+
+	private final Map<String, int[]> mColumnIndexes = new HashMap<String, int[]>();
+
+	/**
+	 * Returns cached plan of `klass`, building it on first use.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> MappingPlan<T> of(Class<T> klass) {
+		synchronized (sPlans) {
+			MappingPlan<T> plan = (MappingPlan<T>) sPlans.get(klass);
+			if (plan == null) {
+				plan = new MappingPlan<T>(klass);
+				sPlans.put(klass, plan);
+			}
+			return plan;
+		}
+	}
+
+	private MappingPlan(Class<T> klass) {
+		mKlass = klass;
+		mMapper = RowMappers.lookup(klass);
+		if (mMapper != null) {
+			mColumnNames = mMapper.getColumnNames();
+			mColumns = null;
+			mAccessors = null;
+			mReaders = null;
+			mPrimaryKey = -1;
+			return;
+		}
+
+		DbColumn[] declared;
+		try {
+			Object model = newInstance();
+			declared = (DbColumn[]) klass.getMethod("getColumns").invoke(model);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot access to method!");
+		} catch (InvocationTargetException e) {
+			throw new IllegalArgumentException(
+					"Method param type does not match!");
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(
+					"Model must be extended from BaseDbModel.");
+		}
+
+		List<DbColumn> columns = new ArrayList<DbColumn>(declared.length);
+		List<Accessor> accessors = new ArrayList<Accessor>(declared.length);
+		for (DbColumn column : declared) {
+			Accessor accessor = resolveAccessor(klass, column);
+			// skip undeclared field
+			if (accessor == null)
+				continue;
+			columns.add(column);
+			accessors.add(accessor);
+		}
+		mColumns = columns.toArray(new DbColumn[columns.size()]);
+		mAccessors = accessors.toArray(new Accessor[accessors.size()]);
+		mReaders = new ValueReader[mColumns.length];
+		for (int i = 0; i < mColumns.length; i++) {
+			mReaders[i] = ValueReader.forType(
+					mColumns[i].getType(), mAccessors[i].getType());
+		}
+		mColumnNames = new String[mColumns.length];
+		int primaryKey = -1;
+		for (int i = 0; i < mColumns.length; i++) {
+			mColumnNames[i] = mColumns[i].getName();
+			if (mColumns[i].isPrimaryKey())
+				primaryKey = i;
+		}
+		mPrimaryKey = primaryKey;
+	}
+
+	T newInstance() {
+		try {
+			return mKlass.newInstance();
+		} catch (Exception e) {
+			throw new IllegalArgumentException(
+					"DbModel doesn't have default constructor");
+		}
+	}
+
+	/**
+	 * Returns `RowMapper` of the model, or null if the model is mapped
+	 * with reflection.
+	 */
+	RowMapper<T> getMapper() {
+		return mMapper;
+	}
+
+	/**
+	 * Names of mapped columns. Order matches `getColumnIndexes`.
+	 */
+	String[] getColumnNames() {
+		return mColumnNames;
+	}
+
+	/**
+	 * Mapped columns, in the order of `getColumns()` with undeclared
+	 * fields removed. Null if the model has a `RowMapper`.
+	 */
+	DbColumn[] getColumns() {
+		return mColumns;
+	}
+
+	/**
+	 * Position of the primary key column in `getColumns()`, or -1 if the
+	 * model has none or has a `RowMapper`.
+	 */
+	int getPrimaryKey() {
+		return mPrimaryKey;
+	}
+
+	Class<T> getModelClass() {
+		return mKlass;
+	}
+
+	/**
+	 * Maps current row of `cursor` into `model`. Columns whose index is -1
+	 * are not in the cursor and left untouched.
+	 */
+	void fill(T model, Cursor cursor, int[] columnIndexes) {
+		Accessor[] accessors = mAccessors;
+		ValueReader[] readers = mReaders;
+		for (int i = 0; i < accessors.length; i++) {
+			int columnIndex = columnIndexes[i];
+			if (columnIndex < 0)
+				continue;
+			accessors[i].set(model, readers[i].read(cursor, columnIndex));
+		}
+	}
+
+	/**
+	 * Copies current row of `cursor` without conversion, to be mapped later
+	 * by `fill(model, values, columnIndexes)` on any thread.
+	 */
+	Object[] copyRow(Cursor cursor, int[] columnIndexes) {
+		ValueReader[] readers = mReaders;
+		Object[] values = new Object[readers.length];
+		for (int i = 0; i < readers.length; i++) {
+			int columnIndex = columnIndexes[i];
+			if (columnIndex >= 0)
+				values[i] = readers[i].readRaw(cursor, columnIndex);
+		}
+		return values;
+	}
+
+	/**
+	 * Maps row copied by `copyRow` into `model`.
+	 */
+	void fill(T model, Object[] values, int[] columnIndexes) {
+		Accessor[] accessors = mAccessors;
+		ValueReader[] readers = mReaders;
+		for (int i = 0; i < accessors.length; i++) {
+			if (columnIndexes[i] < 0)
+				continue;
+			accessors[i].set(model, readers[i].convert(values[i]));
+		}
+	}
+
+	/**
+	 * Returns indexes of mapped columns in `cursor`, -1 for columns missing
+	 * from it. Result is cached by column names of the cursor, so queries
+	 * of same projection share it.
+	 */
+	int[] getColumnIndexes(Cursor cursor) {
+		String[] names = cursor.getColumnNames();
+		String shape = Arrays.toString(names);
+		synchronized (mColumnIndexes) {
+			int[] indexes = mColumnIndexes.get(shape);
+			if (indexes == null) {
+				indexes = new int[mColumnNames.length];
+				for (int i = 0; i < mColumnNames.length; i++)
+					indexes[i] = cursor.getColumnIndex(mColumnNames[i]);
+				mColumnIndexes.put(shape, indexes);
+			}
+			return indexes;
+		}
+	}
+
+	private static Accessor resolveAccessor(Class<?> klass, DbColumn column) {
+		Field field;
+		try {
+			field = klass.getDeclaredField(
+					StringUtils.toLowerCamelCase(column.getName()));
+		} catch (NoSuchFieldException e) {
+			return null;
+		}
+
+		String setMethodName = "set" + StringUtils.toCamelCase(column.getName());
+		try {
+			return new Accessor(klass.getMethod(setMethodName, field.getType()));
+		} catch (NoSuchMethodException e) {
+			field.setAccessible(true);
+			return new Accessor(field);
+		}
+	}
+
+	/**
+	 * Writes a column value into model, through setter if it exists or
+	 * directly to the field otherwise.
+	 */
+	static final class Accessor {
+		private final Method mSetter;
+		private final Field mField;
+
+		Accessor(Method setter) {
+			mSetter = setter;
+			mField = null;
+		}
+
+		Accessor(Field field) {
+			mSetter = null;
+			mField = field;
+		}
+
+		Class<?> getType() {
+			return mSetter != null ? 
+					mSetter.getParameterTypes()[0] : mField.getType();
+		}
+
+		void set(Object model, Object value) {
+			try {
+				if (mSetter != null)
+					mSetter.invoke(model, value);
+				else
+					mField.set(model, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Cannot access to method!");
+			} catch (InvocationTargetException e) {
+				throw new IllegalArgumentException(
+						"Method param type does not match!");
+			}
+		}
+	}
+}
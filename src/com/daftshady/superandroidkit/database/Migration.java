@@ -0,0 +1,47 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.Collections;
+import java.util.List;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Migration
+ * Schema change to a database version, applied by `AbstractDbHelper` on
+ * upgrade. `migrate` runs inside the upgrade transaction and should only
+ * make cheap changes such as DDL. Data rewrites of large tables should be
+ * returned from `getBackfills`, which run later in the background.
+ *
+ */
+public abstract class Migration {
+
+	private final int mVersion;
+
+	/**
+	 * @param version
+	 * 		Database version this migration upgrades to.
+	 */
+	public Migration(int version) {
+		if (version < 1)
+			throw new IllegalArgumentException("Version should be positive");
+		mVersion = version;
+	}
+
+	public int getVersion() {
+		return mVersion;
+	}
+
+	/**
+	 * Applies schema change. Exception thrown from it fails the upgrade
+	 * and rolls back every migration of it.
+	 */
+	public abstract void migrate(SQLiteDatabase db);
+
+	/**
+	 * Should return data backfills of this migration. Backfills are run in
+	 * order after the upgrade has committed.
+	 */
+	public List<Backfill> getBackfills() {
+		return Collections.emptyList();
+	}
+}
@@ -0,0 +1,90 @@
+package com.daftshady.superandroidkit.database;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import android.database.Cursor;
+
+/**
+ * ModelIterator
+ * Lazily maps cursor rows to models, one row per `next()`, so memory use
+ * doesn't grow with the size of result set.
+ * Iterator can be traversed only once. Cursor is closed when iteration is
+ * exhausted or `close()` is called.
+ *
+ * @param <T> Model type
+ */
+public class ModelIterator<T> implements Iterator<T>, Iterable<T>, Closeable {
+
+	private final BaseCursorManager mManager;
+
+	private final Cursor mCursor;
+
+	private final MappingPlan<T> mPlan;
+
+	private final int[] mColumnIndexes;
+
+	private final boolean mReuseInstance;
+
+	private T mInstance;
+
+	private boolean mHasNext;
+
+	ModelIterator(BaseCursorManager manager, Cursor cursor, Class<T> klass,
+			boolean reuseInstance) {
+		mManager = manager;
+		mCursor = cursor;
+		mPlan = MappingPlan.of(klass);
+		mColumnIndexes = manager.resolveColumnIndexes(mPlan);
+		mReuseInstance = reuseInstance;
+		mHasNext = mCursor.moveToFirst();
+		if (!mHasNext)
+			close();
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return mHasNext;
+	}
+
+	/**
+	 * Returns model of the next row. In flyweight mode, the same instance is
+	 * returned with its fields overwritten, so it must not be kept
+	 * after the following call.
+	 */
+	@Override
+	public T next() {
+		if (!mHasNext)
+			throw new NoSuchElementException();
+
+		// The flyweight is overwritten by every row, so it is never shared
+		// through the identity map, not even after the first row.
+		T model = mManager.mapRow(mPlan, mColumnIndexes,
+				mReuseInstance ? mInstance : null, !mReuseInstance);
+		if (mReuseInstance)
+			mInstance = model;
+
+		mHasNext = mCursor.moveToNext();
+		if (!mHasNext)
+			close();
+		return model;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Cursor is read only");
+	}
+
+	@Override
+	public void close() {
+		mHasNext = false;
+		if (!mCursor.isClosed())
+			mCursor.close();
+	}
+}
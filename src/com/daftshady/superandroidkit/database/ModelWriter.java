@@ -0,0 +1,251 @@
+package com.daftshady.superandroidkit.database;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.AbstractList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.ContentValues;
+
+import com.daftshady.superandroidkit.utils.StringUtils;
+
+/**
+ * ModelWriter
+ * Converts `BaseDbModel` into `ContentValues`, the reverse of
+ * `BaseCursorManager`. Getters of mapped columns are resolved once per
+ * model class. If the model has a `RowMapper`, its `toContentValues` is
+ * used instead.
+ * Values are encoded as they are read back : DATE as
+ * `DbDateCodec.format`, BOOLEAN as 1 or 0, TIMESTAMP as milliseconds and
+ * BLOB_STREAM as id of the blob.
+ *
+ */
+public final class ModelWriter<T> {
+
+	private static final Map<Class<?>, ModelWriter<?>> sWriters =
+			new HashMap<Class<?>, ModelWriter<?>>();
+
+	private final RowMapper<T> mMapper;
+
+	private final DbColumn[] mColumns;
+
+	private final Getter[] mGetters;
+
+	private final int mPrimaryKey;
+
+	/*
+	 * Whether primary key 0 means unassigned. Only for integer keys held in
+	 * primitive fields, which cannot be null.
+	 */
+	private final boolean mZeroUnassigned;
+
+	/**
+	 * Returns cached writer of `klass`, building it on first use.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ModelWriter<T> of(Class<T> klass) {
+		synchronized (sWriters) {
+			ModelWriter<T> writer = (ModelWriter<T>) sWriters.get(klass);
+			if (writer == null) {
+				writer = new ModelWriter<T>(MappingPlan.of(klass));
+				sWriters.put(klass, writer);
+			}
+			return writer;
+		}
+	}
+
+	private ModelWriter(MappingPlan<T> plan) {
+		mMapper = plan.getMapper();
+		if (mMapper != null) {
+			mColumns = null;
+			mGetters = null;
+			mPrimaryKey = -1;
+			mZeroUnassigned = false;
+			return;
+		}
+		mColumns = plan.getColumns();
+		mGetters = new Getter[mColumns.length];
+		for (int i = 0; i < mColumns.length; i++)
+			mGetters[i] = resolveGetter(plan.getModelClass(), mColumns[i]);
+		mPrimaryKey = plan.getPrimaryKey();
+		if (mPrimaryKey >= 0) {
+			DbEnum.Type type = mColumns[mPrimaryKey].getType();
+			Class<?> fieldType = mGetters[mPrimaryKey].getType();
+			mZeroUnassigned = (type == DbEnum.Type.INTEGER || type == DbEnum.Type.LONG)
+					&& (fieldType == int.class || fieldType == long.class);
+		} else {
+			mZeroUnassigned = false;
+		}
+	}
+
+	/**
+	 * Returns primary key column of the model, or null if it has none or
+	 * has a `RowMapper`.
+	 */
+	public DbColumn getPrimaryKey() {
+		return mPrimaryKey >= 0 ? mColumns[mPrimaryKey] : null;
+	}
+
+	/**
+	 * Returns values of every mapped column of `model`. Primary key is left
+	 * out if it is null, so that it is assigned by the database. An integer
+	 * key held in an `int` or `long` field is also left out if it is 0, as
+	 * an INTEGER PRIMARY KEY is assigned from 1. Models whose key may be 0
+	 * should hold it in an `Integer` or `Long` field.
+	 */
+	public ContentValues toContentValues(T model) {
+		if (mMapper != null)
+			return mMapper.toContentValues(model);
+
+		ContentValues values = new ContentValues(mColumns.length);
+		for (int i = 0; i < mColumns.length; i++) {
+			Object value = mGetters[i].get(model);
+			if (i == mPrimaryKey && isUnassigned(value, mZeroUnassigned))
+				continue;
+			put(values, mColumns[i], value);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns view of `models` converted on access, so that rows of a bulk
+	 * write are not all converted up front.
+	 */
+	public List<ContentValues> toContentValues(final List<? extends T> models) {
+		return new AbstractList<ContentValues>() {
+			@Override
+			public ContentValues get(int location) {
+				return toContentValues(models.get(location));
+			}
+
+			@Override
+			public int size() {
+				return models.size();
+			}
+		};
+	}
+
+	/**
+	 * Returns primary key value of `model`.
+	 */
+	Object getPrimaryKeyValue(T model) {
+		if (mPrimaryKey < 0)
+			throw new IllegalArgumentException("Model has no primary key column");
+		return encode(mColumns[mPrimaryKey].getType(), 
+				mGetters[mPrimaryKey].get(model));
+	}
+
+	private static boolean isUnassigned(Object value, boolean zeroUnassigned) {
+		return value == null || (zeroUnassigned 
+				&& value instanceof Number && ((Number) value).longValue() == 0);
+	}
+
+	private static Object encode(DbEnum.Type type, Object value) {
+		if (value == null)
+			return null;
+		switch (type) {
+		case DATE:
+			return value instanceof Date ? DbDateCodec.format((Date) value) : value;
+		case BOOLEAN:
+			return value instanceof Boolean ? (((Boolean) value) ? 1 : 0) : value;
+		case TIMESTAMP:
+			return value instanceof Date ? ((Date) value).getTime() : value;
+		case BLOB_STREAM:
+			return value instanceof BlobHandle ? ((BlobHandle) value).getId() : value;
+		default:
+			return value;
+		}
+	}
+
+	private static void put(ContentValues values, DbColumn column, Object value) {
+		String name = column.getName();
+		value = encode(column.getType(), value);
+		if (value == null)
+			values.putNull(name);
+		else if (value instanceof String)
+			values.put(name, (String) value);
+		else if (value instanceof Integer)
+			values.put(name, (Integer) value);
+		else if (value instanceof Long)
+			values.put(name, (Long) value);
+		else if (value instanceof Double)
+			values.put(name, (Double) value);
+		else if (value instanceof Float)
+			values.put(name, (Float) value);
+		else if (value instanceof Short)
+			values.put(name, (Short) value);
+		else if (value instanceof Byte)
+			values.put(name, (Byte) value);
+		else if (value instanceof Boolean)
+			values.put(name, (Boolean) value);
+		else if (value instanceof byte[])
+			values.put(name, (byte[]) value);
+		else
+			values.put(name, value.toString());
+	}
+
+	private static Getter resolveGetter(Class<?> klass, DbColumn column) {
+		Field field;
+		try {
+			field = klass.getDeclaredField(
+					StringUtils.toLowerCamelCase(column.getName()));
+		} catch (NoSuchFieldException e) {
+			throw new IllegalArgumentException(
+					"No field for column " + column.getName());
+		}
+
+		String suffix = StringUtils.toCamelCase(column.getName());
+		try {
+			return new Getter(klass.getMethod("get" + suffix));
+		} catch (NoSuchMethodException e) {
+		}
+		if (field.getType() == boolean.class || field.getType() == Boolean.class) {
+			try {
+				return new Getter(klass.getMethod("is" + suffix));
+			} catch (NoSuchMethodException e) {
+			}
+		}
+		field.setAccessible(true);
+		return new Getter(field);
+	}
+
+	/**
+	 * Reads a column value from model, through getter if it exists or
+	 * directly from the field otherwise.
+	 */
+	private static final class Getter {
+		private final Method mGetter;
+		private final Field mField;
+
+		Getter(Method getter) {
+			mGetter = getter;
+			mField = null;
+		}
+
+		Getter(Field field) {
+			mGetter = null;
+			mField = field;
+		}
+
+		Class<?> getType() {
+			return mGetter != null ? mGetter.getReturnType() : mField.getType();
+		}
+
+		Object get(Object model) {
+			try {
+				if (mGetter != null)
+					return mGetter.invoke(model);
+				return mField.get(model);
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Cannot access to method!");
+			} catch (InvocationTargetException e) {
+				throw new IllegalArgumentException(
+						"Getter of model threw exception", e.getCause());
+			}
+		}
+	}
+}
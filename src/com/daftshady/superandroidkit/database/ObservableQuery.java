@@ -0,0 +1,247 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * ObservableQuery
+ * Query re-run after writes through `DbManager` commit on its tables,
+ * delivering the change by key column to its observer. Writes in quick
+ * succession are debounced into one run. Runs happen on a background
+ * thread with their own session. Observer is called on the thread which
+ * created the query if it has a `Looper`, otherwise on the background
+ * thread.
+ *
+ * @param <T> Model type
+ */
+public class ObservableQuery<T> {
+
+	public interface Observer<T> {
+		void onChanged(QueryDiff<T> diff);
+	}
+
+	private static final String TAG = "ObservableQuery";
+
+	private static final ScheduledExecutorService sExecutor =
+			Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, TAG);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final SQLiteOpenHelper mHelper;
+
+	private final boolean mConcurrent;
+
+	private final Class<T> mKlass;
+
+	private final String mTable;
+
+	private final Set<String> mTables;
+
+	private final String mKeyColumn;
+
+	private final String[] mProjection;
+
+	private final String mSelection;
+
+	private final String[] mSelectionArgs;
+
+	private final String mOrderBy;
+
+	private final long mDebounceMillis;
+
+	private final Observer<T> mObserver;
+
+	private final Handler mHandler;
+
+	private Map<Object, Row<T>> mSnapshot = new LinkedHashMap<Object, Row<T>>();
+
+	private boolean mScheduled = false;
+
+	private boolean mDelivered = false;
+
+	private volatile boolean mDisposed = false;
+
+	private final Runnable mRequery = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (ObservableQuery.this) {
+				mScheduled = false;
+			}
+			requery();
+		}
+	};
+
+	ObservableQuery(SQLiteOpenHelper helper, boolean concurrent, Class<T> klass,
+			String table, DbColumn keyColumn, String[] projection,
+			String selection, String[] selectionArgs, String orderBy,
+			long debounceMillis, Observer<T> observer) {
+		if (keyColumn.getType() == DbEnum.Type.BLOB)
+			throw new IllegalArgumentException("BLOB column cannot be a key");
+		mHelper = helper;
+		mConcurrent = concurrent;
+		mKlass = klass;
+		mTable = table;
+		mTables = QueryCache.parseTables(table);
+		mKeyColumn = keyColumn.getName();
+		mProjection = projection;
+		mSelection = selection;
+		mSelectionArgs = selectionArgs;
+		mOrderBy = orderBy;
+		mDebounceMillis = debounceMillis;
+		mObserver = observer;
+		mHandler = Looper.myLooper() != null ? new Handler() : null;
+	}
+
+	/**
+	 * Stops observing. Pending runs are dropped.
+	 */
+	public void dispose() {
+		mDisposed = true;
+		DbManager.removeObservableQuery(mHelper, this);
+	}
+
+	public boolean isDisposed() {
+		return mDisposed;
+	}
+
+	/*
+	 * Called after a commit on `tables`.
+	 */
+	void onTablesChanged(Collection<String> tables) {
+		for (String table : tables) {
+			if (mTables.contains(table)) {
+				schedule(mDebounceMillis);
+				return;
+			}
+		}
+	}
+
+	void schedule(long delayMillis) {
+		synchronized (this) {
+			if (mScheduled || mDisposed)
+				return;
+			mScheduled = true;
+		}
+		sExecutor.schedule(mRequery, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void requery() {
+		if (mDisposed)
+			return;
+
+		Map<Object, Row<T>> snapshot;
+		DbManager session = new DbManager(mHelper, mConcurrent);
+		try {
+			session.open(DbManager.FLAG_OPEN_READABLE_DATABASE);
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Opening database failed : " + e.getMessage(), e);
+			return;
+		}
+		try {
+			Cursor cursor = session.select(mTable, mProjection, mSelection,
+					mSelectionArgs, null, null, mOrderBy, null);
+			if (cursor == null)
+				return;
+			try {
+				snapshot = read(cursor);
+			} finally {
+				cursor.close();
+			}
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Query failed : " + e.getMessage(), e);
+			return;
+		} finally {
+			// Left open, so that requeries don't close the database under
+			// the application nor reopen it after every commit.
+			session.release();
+		}
+
+		final QueryDiff<T> diff = diff(mSnapshot, snapshot);
+		mSnapshot = snapshot;
+		// First result is always delivered, even if empty.
+		if (diff.isEmpty() && mDelivered)
+			return;
+		mDelivered = true;
+		Runnable delivery = new Runnable() {
+			@Override
+			public void run() {
+				if (!mDisposed)
+					mObserver.onChanged(diff);
+			}
+		};
+		if (mHandler != null)
+			mHandler.post(delivery);
+		else
+			delivery.run();
+	}
+
+	private Map<Object, Row<T>> read(Cursor cursor) {
+		BaseCursorManager manager = new BaseCursorManager(cursor);
+		MappingPlan<T> plan = MappingPlan.of(mKlass);
+		int[] columnIndexes = manager.resolveColumnIndexes(plan);
+		int keyIndex = cursor.getColumnIndex(mKeyColumn);
+		int columnCount = cursor.getColumnCount();
+
+		Map<Object, Row<T>> snapshot = new LinkedHashMap<Object, Row<T>>();
+		while (cursor.moveToNext()) {
+			Object[] values = new Object[columnCount];
+			for (int i = 0; i < columnCount; i++)
+				values[i] = ValueReader.RAW.read(cursor, i);
+			T model = manager.mapRow(plan, columnIndexes, null);
+			snapshot.put(values[keyIndex], new Row<T>(model, values));
+		}
+		return snapshot;
+	}
+
+	private static <T> QueryDiff<T> diff(
+			Map<Object, Row<T>> previous, Map<Object, Row<T>> current) {
+		List<T> result = new ArrayList<T>(current.size());
+		List<T> inserted = new ArrayList<T>();
+		List<T> changed = new ArrayList<T>();
+		List<T> removed = new ArrayList<T>();
+		for (Map.Entry<Object, Row<T>> entry : current.entrySet()) {
+			Row<T> row = entry.getValue();
+			result.add(row.mModel);
+			Row<T> old = previous.get(entry.getKey());
+			if (old == null)
+				inserted.add(row.mModel);
+			else if (!Arrays.deepEquals(old.mValues, row.mValues))
+				changed.add(row.mModel);
+		}
+		for (Map.Entry<Object, Row<T>> entry : previous.entrySet()) {
+			if (!current.containsKey(entry.getKey()))
+				removed.add(entry.getValue().mModel);
+		}
+		return new QueryDiff<T>(result, inserted, removed, changed);
+	}
+
+	private static final class Row<T> {
+		final T mModel;
+		final Object[] mValues;
+
+		Row(T model, Object[] values) {
+			mModel = model;
+			mValues = values;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.List;
+
+/**
+ * Page
+ * A page of keyset pagination returned by `DbManager.selectPage`.
+ *
+ * @param <T> Model type
+ */
+public class Page<T> {
+
+	private final List<T> mItems;
+
+	private final String mContinuation;
+
+	Page(List<T> items, String continuation) {
+		mItems = items;
+		mContinuation = continuation;
+	}
+
+	public List<T> getItems() {
+		return mItems;
+	}
+
+	/**
+	 * Opaque token to pass to `selectPage` for the next page, or null if
+	 * this is the last page.
+	 */
+	public String getContinuation() {
+		return mContinuation;
+	}
+
+	public boolean hasNext() {
+		return mContinuation != null;
+	}
+}
@@ -0,0 +1,125 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.database.Cursor;
+
+/**
+ * ParallelMapping
+ * Maps rows of a cursor on a shared pool of worker threads. Cursor is read
+ * on the calling thread in blocks of raw values, and each block is mapped
+ * into models by a worker while the next block is read. Models are returned
+ * in cursor order.
+ *
+ */
+final class ParallelMapping {
+
+	/**
+	 * Minimum number of rows mapped in parallel. Smaller results are mapped
+	 * on the calling thread, where handing off to workers costs more than it
+	 * saves.
+	 */
+	static final int THRESHOLD = 2048;
+
+	private static final int BLOCK_SIZE = 512;
+
+	private static ExecutorService sExecutor;
+
+	private ParallelMapping() {
+	}
+
+	private static synchronized ExecutorService executor() {
+		if (sExecutor == null) {
+			int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+			sExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				private final AtomicInteger mCount = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable,
+							"ParallelMapping-" + mCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sExecutor;
+	}
+
+	/**
+	 * Maps every row of `cursor`, which should be positioned before the first
+	 * row. `plan` should be mapped with reflection. New models are cached
+	 * in `identityMap` through `manager`.
+	 */
+	static <T> List<T> map(Cursor cursor, final MappingPlan<T> plan,
+			final int[] columnIndexes, final BaseCursorManager manager,
+			final IdentityMap identityMap) {
+		int count = cursor.getCount();
+		final Object[] models = new Object[count];
+		final int primaryKey = plan.getPrimaryKey();
+		final boolean keyed = identityMap != null && primaryKey >= 0
+				&& BaseCursorManager.isComplete(columnIndexes);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		ExecutorService executor = executor();
+
+		try {
+			int position = 0;
+			while (position < count) {
+				final int offset = position;
+				final int size = Math.min(BLOCK_SIZE, count - offset);
+				final Object[][] rows = new Object[size][];
+				final Object[] keys = keyed ? new Object[size] : null;
+				for (int i = 0; i < size && cursor.moveToNext(); i++) {
+					rows[i] = plan.copyRow(cursor, columnIndexes);
+					if (keyed)
+						keys[i] = ValueReader.RAW.read(cursor, columnIndexes[primaryKey]);
+				}
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						for (int i = 0; i < size; i++) {
+							if (rows[i] == null)
+								break;
+							Object key = keyed ? keys[i] : null;
+							T model = key != null ? 
+									identityMap.get(plan.getModelClass(), key) : null;
+							if (model == null) {
+								model = plan.newInstance();
+								plan.fill(model, rows[i], columnIndexes);
+								if (key != null)
+									manager.cacheModel(identityMap,
+											plan.getModelClass(), key, model);
+							}
+							models[offset + i] = model;
+						}
+					}
+				}));
+				position += size;
+			}
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while mapping rows", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			for (Future<?> future : futures)
+				future.cancel(false);
+		}
+
+		@SuppressWarnings("unchecked")
+		List<T> result = (List<T>) (List<?>) Arrays.asList(models);
+		return new ArrayList<T>(result);
+	}
+}
@@ -0,0 +1,219 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Build;
+
+import com.daftshady.superandroidkit.datastructure.LruMap;
+
+/**
+ * QueryCache
+ * Result cache of `DbManager.select`, bounded by approximate memory size of
+ * cached rows. Entries of a table are invalidated by every write on the
+ * table through `DbManager`. Same cache can be shared by sessions of
+ * the same database.
+ * Cached results are served as `MatrixCursor` copies, and caching requires
+ * API 11 or higher to read column types.
+ *
+ */
+public class QueryCache {
+
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private static final int VALUE_OVERHEAD = 16;
+
+	private final LruMap<Key, Result> mResults;
+
+	/*
+	 * Incremented on every invalidation, so that a query which ran
+	 * concurrently with a write is not cached with stale rows.
+	 */
+	private long mGeneration;
+
+	/**
+	 * @param maxBytes
+	 * 		Approximate memory budget of cached results in bytes.
+	 */
+	public QueryCache(long maxBytes) {
+		mResults = new LruMap<Key, Result>(maxBytes) {
+			@Override
+			protected long sizeOf(Key key, Result value) {
+				return value.mBytes;
+			}
+		};
+	}
+
+	public static boolean isSupported() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+	}
+
+	public long getHitCount() {
+		return mResults.hitCount();
+	}
+
+	public long getMissCount() {
+		return mResults.missCount();
+	}
+
+	public long getEvictionCount() {
+		return mResults.evictionCount();
+	}
+
+	public long getSize() {
+		return mResults.size();
+	}
+
+	public long getMaxSize() {
+		return mResults.maxSize();
+	}
+
+	public void clear() {
+		synchronized (this) {
+			mGeneration++;
+		}
+		mResults.clear();
+	}
+
+	/**
+	 * Drops every cached result which reads `table`.
+	 */
+	public void invalidate(String table) {
+		synchronized (this) {
+			mGeneration++;
+		}
+		for (Key key : mResults.keys()) {
+			if (key.mTables.contains(table))
+				mResults.remove(key);
+		}
+	}
+
+	synchronized long generation() {
+		return mGeneration;
+	}
+
+	/**
+	 * Returns a fresh cursor over the cached result, or null on miss.
+	 */
+	Cursor get(Key key) {
+		Result result = mResults.get(key);
+		return result != null ? result.newCursor() : null;
+	}
+
+	/**
+	 * Copies `cursor` into the cache unless an invalidation happened since
+	 * `generation`, and returns a cursor to use in place of the copied one.
+	 * `cursor` is closed.
+	 */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	Cursor put(Key key, Cursor cursor, long generation) {
+		Result result;
+		try {
+			result = new Result(cursor);
+		} finally {
+			cursor.close();
+		}
+		synchronized (this) {
+			if (generation == mGeneration)
+				mResults.put(key, result);
+		}
+		return result.newCursor();
+	}
+
+	/*
+	 * `table` may be a join clause, so every identifier in it is taken
+	 * as a table the result depends on.
+	 */
+	static Set<String> parseTables(String table) {
+		Set<String> tables = new HashSet<String>();
+		for (String token : table.split("[^A-Za-z0-9_]+")) {
+			if (token.length() > 0)
+				tables.add(token);
+		}
+		return tables;
+	}
+
+	static final class Key {
+		private final Object[] mParts;
+		private final Set<String> mTables;
+		private final int mHash;
+
+		Key(String table, String[] columns, String selection,
+				String[] selectionArgs, String groupBy, String having,
+				String orderBy, String limit) {
+			// Arrays are copied, so that callers reusing them can't change
+			// keys of cached entries.
+			mParts = new Object[] {
+					table, columns != null ? columns.clone() : null, selection, 
+					selectionArgs != null ? selectionArgs.clone() : null,
+					groupBy, having, orderBy, limit };
+			mHash = Arrays.deepHashCode(mParts);
+			mTables = parseTables(table);
+		}
+
+		@Override
+		public int hashCode() {
+			return mHash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.deepEquals(mParts, ((Key) o).mParts);
+		}
+	}
+
+	private static final class Result {
+		private final String[] mColumnNames;
+		private final Object[][] mRows;
+		private final long mBytes;
+
+		@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+		Result(Cursor cursor) {
+			mColumnNames = cursor.getColumnNames();
+			int columnCount = mColumnNames.length;
+			mRows = new Object[cursor.getCount()][];
+			long bytes = ENTRY_OVERHEAD;
+			int row = 0;
+			cursor.moveToPosition(-1);
+			while (cursor.moveToNext()) {
+				Object[] values = new Object[columnCount];
+				for (int i = 0; i < columnCount; i++) {
+					switch (cursor.getType(i)) {
+					case Cursor.FIELD_TYPE_INTEGER:
+						values[i] = cursor.getLong(i);
+						break;
+					case Cursor.FIELD_TYPE_FLOAT:
+						values[i] = cursor.getDouble(i);
+						break;
+					case Cursor.FIELD_TYPE_STRING:
+						String string = cursor.getString(i);
+						values[i] = string;
+						bytes += string.length() * 2;
+						break;
+					case Cursor.FIELD_TYPE_BLOB:
+						byte[] blob = cursor.getBlob(i);
+						values[i] = blob;
+						bytes += blob.length;
+						break;
+					default:
+						values[i] = null;
+					}
+					bytes += VALUE_OVERHEAD;
+				}
+				mRows[row++] = values;
+			}
+			mBytes = bytes;
+		}
+
+		Cursor newCursor() {
+			MatrixCursor cursor = new MatrixCursor(mColumnNames, mRows.length);
+			for (Object[] row : mRows)
+				cursor.addRow(row);
+			return cursor;
+		}
+	}
+}
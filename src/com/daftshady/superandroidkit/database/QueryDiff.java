@@ -0,0 +1,59 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.List;
+
+/**
+ * QueryDiff
+ * Change of an observed query result between two runs, by key column.
+ *
+ * @param <T> Model type
+ */
+public class QueryDiff<T> {
+
+	private final List<T> mResult;
+
+	private final List<T> mInserted;
+
+	private final List<T> mRemoved;
+
+	private final List<T> mChanged;
+
+	QueryDiff(List<T> result, List<T> inserted, List<T> removed, List<T> changed) {
+		mResult = result;
+		mInserted = inserted;
+		mRemoved = removed;
+		mChanged = changed;
+	}
+
+	/**
+	 * Current result of the query.
+	 */
+	public List<T> getResult() {
+		return mResult;
+	}
+
+	/**
+	 * Rows whose key was not in the previous result.
+	 */
+	public List<T> getInserted() {
+		return mInserted;
+	}
+
+	/**
+	 * Rows of the previous result whose key is not in the current one.
+	 */
+	public List<T> getRemoved() {
+		return mRemoved;
+	}
+
+	/**
+	 * Rows whose key was in the previous result with other column values.
+	 */
+	public List<T> getChanged() {
+		return mChanged;
+	}
+
+	public boolean isEmpty() {
+		return mInserted.isEmpty() && mRemoved.isEmpty() && mChanged.isEmpty();
+	}
+}
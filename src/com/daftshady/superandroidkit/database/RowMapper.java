@@ -0,0 +1,37 @@
+package com.daftshady.superandroidkit.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * RowMapper
+ * Reflection-free mapping between a cursor row and a model.
+ * Mappers are either registered with `RowMappers.register` or found by
+ * the naming convention `<model class name>$$RowMapper`. This library
+ * doesn't generate mappers : they are written by hand or generated by the
+ * application's own build, see `RowMappers`.
+ *
+ * @param <T> Model type
+ */
+public interface RowMapper<T> {
+
+	/**
+	 * Column names read by `mapRow` and written by `toContentValues`.
+	 */
+	String[] getColumnNames();
+
+	/**
+	 * Creates a model from the current row of cursor.
+	 * @param cursor
+	 * 		Cursor positioned on the row.
+	 * @param columnIndexes
+	 * 		Indexes of `getColumnNames()` in the cursor, in the same order.
+	 * 		Index is -1 if the column is not in the cursor.
+	 */
+	T mapRow(Cursor cursor, int[] columnIndexes);
+
+	/**
+	 * Converts a model to `ContentValues`.
+	 */
+	ContentValues toContentValues(T model);
+}
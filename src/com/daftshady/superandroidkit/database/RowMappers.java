@@ -0,0 +1,86 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RowMappers
+ * Registry of `RowMapper`s. Models without a mapper are mapped with
+ * reflection by `BaseCursorManager`.
+ * No mapper ships with this library, so mapping is reflection-free only
+ * for models whose mapper is provided by the application, either :
+ * registered with `register` before the model is first queried, or
+ * a class named `<model class name>$$RowMapper` (`GENERATED_SUFFIX`) in
+ * the model's package, e.g. generated by an annotation processor of the
+ * application's build. It should implement `RowMapper` of the model, have
+ * a public no-argument constructor and be kept from obfuscation, as it is
+ * loaded by name.
+ *
+ */
+public class RowMappers {
+
+	public static final String GENERATED_SUFFIX = "$$RowMapper";
+
+	private static final Map<Class<?>, RowMapper<?>> sMappers =
+			new HashMap<Class<?>, RowMapper<?>>();
+
+	/*
+	 * Classes already looked up without finding any mapper.
+	 */
+	private static final Map<Class<?>, Boolean> sMissing =
+			new HashMap<Class<?>, Boolean>();
+
+	/**
+	 * Registers `mapper` for `klass`. Should be called before `klass`
+	 * is first queried, because mapping plans are cached.
+	 */
+	public static <T> void register(Class<T> klass, RowMapper<T> mapper) {
+		if (klass == null || mapper == null)
+			throw new IllegalArgumentException("Class and mapper cannot be null");
+		synchronized (sMappers) {
+			sMappers.put(klass, mapper);
+			sMissing.remove(klass);
+		}
+	}
+
+	/**
+	 * Returns mapper of `klass`, or null if neither registered nor
+	 * generated mapper exists.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> RowMapper<T> lookup(Class<T> klass) {
+		synchronized (sMappers) {
+			RowMapper<T> mapper = (RowMapper<T>) sMappers.get(klass);
+			if (mapper != null || sMissing.containsKey(klass))
+				return mapper;
+
+			mapper = loadGenerated(klass);
+			if (mapper != null)
+				sMappers.put(klass, mapper);
+			else
+				sMissing.put(klass, Boolean.TRUE);
+			return mapper;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> RowMapper<T> loadGenerated(Class<T> klass) {
+		try {
+			Class<?> mapperClass = Class.forName(
+					klass.getName() + GENERATED_SUFFIX, true,
+					klass.getClassLoader());
+			return (RowMapper<T>) mapperClass.newInstance();
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (InstantiationException e) {
+			throw new IllegalArgumentException(
+					"RowMapper doesn't have default constructor");
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(
+					"RowMapper doesn't have default constructor");
+		} catch (ClassCastException e) {
+			throw new IllegalArgumentException(
+					"Generated mapper must implement RowMapper");
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.Date;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.os.Build;
+
+/**
+ * ValueReader
+ * Reads a cell of a `DbEnum.Type` column from cursor. One reader per type
+ * is resolved when a mapping plan is built, so mapping a row does not
+ * switch on column types.
+ *
+ */
+abstract class ValueReader {
+
+	abstract Object read(Cursor cursor, int columnIndex);
+
+	/**
+	 * Reads a cell with only cursor access, leaving costly conversion to
+	 * `convert`, so that conversion can run off the cursor's thread.
+	 * `convert(readRaw(cursor, i))` equals `read(cursor, i)`.
+	 */
+	Object readRaw(Cursor cursor, int columnIndex) {
+		return read(cursor, columnIndex);
+	}
+
+	Object convert(Object raw) {
+		return raw;
+	}
+
+	/**
+	 * Returns reader of `type` for a field of `fieldType`, which is only
+	 * used to map TIMESTAMP columns to either `Date` or `long`.
+	 */
+	static ValueReader forType(DbEnum.Type type, Class<?> fieldType) {
+		switch (type) {
+		case INTEGER:
+			return INTEGER;
+		case BLOB:
+			return BLOB;
+		case STRING:
+			return STRING;
+		case DOUBLE:
+			return DOUBLE;
+		case FLOAT:
+			return FLOAT;
+		case LONG:
+			return LONG;
+		case DATE:
+			return DATE;
+		case BOOLEAN:
+			return BOOLEAN;
+		case TIMESTAMP:
+			return fieldType == long.class || fieldType == Long.class ? 
+					LONG : TIMESTAMP;
+		case BLOB_STREAM:
+			return BLOB_STREAM;
+		default:
+			throw new IllegalArgumentException("Unknown column type : " + type);
+		}
+	}
+
+
+	static final ValueReader INTEGER = new ValueReader() {
+		@Override
+		Object read(Cursor cursor, int columnIndex) {
+			return cursor.getInt(columnIndex);
+		}
+	};
+
+	static final ValueReader BLOB = new ValueReader() {
+		@Override
+		Object read(Cursor cursor, int columnIndex) {
+			return cursor.getBlob(columnIndex);
+		}
+	};
+
+	static final ValueReader STRING = new ValueReader() {
+		@Override
+		Object read(Cursor cursor, int columnIndex) {
+			return cursor.getString(columnIndex);
+		}
+	};
+
+	static final ValueReader DOUBLE = new ValueReader() {
+		@Override
+		Object read(Cursor cursor, int columnIndex) {
+			return cursor.getDouble(columnIndex);
+		}
+	};
+
+	static final ValueReader FLOAT = new ValueReader() {
+		@Override
+		Object read(Cursor cursor, int columnIndex) {
+			return cursor.getFloat(columnIndex);
+		}
+	};
+
+	static final ValueReader LONG = new ValueReader() {
+		@Override
+		Object read(Cursor cursor, int columnIndex) {
+			return cursor.getLong(columnIndex);
+		}
+	};
+
+	static final ValueReader DATE = new ValueReader() {
+		@Override
+		Object read(Cursor cursor, int columnIndex) {
+			return DbDateCodec.parse(cursor.getString(columnIndex));
+		}
+
+		@Override
+		Object readRaw(Cursor cursor, int columnIndex) {
+			return cursor.getString(columnIndex);
+		}
+
+		@Override
+		Object convert(Object raw) {
+			return DbDateCodec.parse((String) raw);
+		}
+	};
+
+	static final ValueReader TIMESTAMP = new ValueReader() {
+		@Override
+		Object read(Cursor cursor, int columnIndex) {
+			if (cursor.isNull(columnIndex))
+				return null;
+			return new Date(cursor.getLong(columnIndex));
+		}
+
+		@Override
+		Object readRaw(Cursor cursor, int columnIndex) {
+			if (cursor.isNull(columnIndex))
+				return null;
+			return cursor.getLong(columnIndex);
+		}
+
+		@Override
+		Object convert(Object raw) {
+			return raw == null ? null : new Date((Long) raw);
+		}
+	};
+
+	static final ValueReader BLOB_STREAM = new ValueReader() {
+		@Override
+		Object read(Cursor cursor, int columnIndex) {
+			if (cursor.isNull(columnIndex))
+				return null;
+			return new BlobHandle(cursor.getLong(columnIndex));
+		}
+	};
+
+	static final ValueReader BOOLEAN = new ValueReader() {
+		@Override
+		Object read(Cursor cursor, int columnIndex) {
+			return cursor.getInt(columnIndex) > 0;
+		}
+	};
+
+	/*
+	 * Reads a cell as stored, whatever the column type is. Used to compare
+	 * rows, not to map them.
+	 */
+	static final ValueReader RAW = new ValueReader() {
+		@Override
+		Object read(Cursor cursor, int columnIndex) {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+				return readTyped(cursor, columnIndex);
+			try {
+				return cursor.getString(columnIndex);
+			} catch (SQLiteException e) {
+				return cursor.getBlob(columnIndex);
+			}
+		}
+
+		@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+		private Object readTyped(Cursor cursor, int columnIndex) {
+			switch (cursor.getType(columnIndex)) {
+			case Cursor.FIELD_TYPE_INTEGER:
+				return cursor.getLong(columnIndex);
+			case Cursor.FIELD_TYPE_FLOAT:
+				return cursor.getDouble(columnIndex);
+			case Cursor.FIELD_TYPE_STRING:
+				return cursor.getString(columnIndex);
+			case Cursor.FIELD_TYPE_BLOB:
+				return cursor.getBlob(columnIndex);
+			default:
+				return null;
+			}
+		}
+	};
+}
@@ -0,0 +1,317 @@
+package com.daftshady.superandroidkit.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.util.Log;
+
+/**
+ * WriteBehindQueue
+ * Queues single row mutations and commits them from a background writer
+ * thread in group transactions, so that many small writes share one disk
+ * sync. A batch is committed when it reaches `maxBatchSize` mutations or
+ * `maxDelayMillis` after its first mutation, whichever comes first.
+ * Returned futures complete after the batch holding the mutation commits.
+ *
+ * The given `DbManager` must be opened writable and should not be used by
+ * other threads while the queue is running.
+ *
+ */
+public class WriteBehindQueue {
+
+	private final String TAG = "WriteBehindQueue";
+
+	private final DbManager mManager;
+
+	private final BlockingQueue<Mutation<?>> mQueue;
+
+	private final int mMaxBatchSize;
+
+	private final long mMaxDelayMillis;
+
+	private final Thread mWriter;
+
+	private volatile boolean mShutdown = false;
+
+	public WriteBehindQueue(DbManager manager) {
+		this(manager, 1024, 256, 50);
+	}
+
+	/**
+	 * @param manager
+	 * 		Writable session used by the writer thread.
+	 * @param capacity
+	 * 		Maximum number of pending mutations. Enqueueing blocks when full.
+	 * @param maxBatchSize
+	 * 		Maximum number of mutations committed in one transaction.
+	 * @param maxDelayMillis
+	 * 		Maximum time a mutation waits for its batch to fill.
+	 */
+	public WriteBehindQueue(
+			DbManager manager, int capacity, int maxBatchSize, long maxDelayMillis) {
+		if (manager == null)
+			throw new IllegalArgumentException("Manager cannot be null");
+		if (capacity <= 0 || maxBatchSize <= 0 || maxDelayMillis < 0)
+			throw new IllegalArgumentException("Queue bounds should be positive");
+
+		mManager = manager;
+		mQueue = new ArrayBlockingQueue<Mutation<?>>(capacity);
+		mMaxBatchSize = maxBatchSize;
+		mMaxDelayMillis = maxDelayMillis;
+		mWriter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, TAG);
+		mWriter.setDaemon(true);
+		mWriter.start();
+	}
+
+	/**
+	 * Queues insertion of a row.
+	 * @return
+	 * 		Future of the inserted row id.
+	 */
+	public Future<Long> insert(final String tableName, final ContentValues data) {
+		return enqueue(new Mutation<Long>(false) {
+			@Override
+			Long apply() {
+				return mManager.insertRow(tableName, data);
+			}
+		});
+	}
+
+	/**
+	 * Queues update of rows.
+	 * @return
+	 * 		Future of the number of updated rows.
+	 */
+	public Future<Integer> update(final String tableName, final ContentValues data,
+			final String whereClause, final String[] whereArgs) {
+		return enqueue(new Mutation<Integer>(false) {
+			@Override
+			Integer apply() {
+				return mManager.updateRows(tableName, data, whereClause, whereArgs);
+			}
+		});
+	}
+
+	/**
+	 * Queues deletion of rows.
+	 * @return
+	 * 		Future of the number of deleted rows.
+	 */
+	public Future<Integer> delete(final String tableName,
+			final String whereClause, final String[] whereArgs) {
+		return enqueue(new Mutation<Integer>(false) {
+			@Override
+			Integer apply() {
+				return mManager.deleteRows(tableName, whereClause, whereArgs);
+			}
+		});
+	}
+
+	/**
+	 * Commits pending mutations right away and returns a future completed
+	 * once every mutation queued before this call is committed.
+	 */
+	public Future<Void> barrier() {
+		return enqueue(new Mutation<Void>(true) {
+			@Override
+			Void apply() {
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Blocks until every mutation queued before this call is committed.
+	 */
+	public void flush() throws InterruptedException {
+		try {
+			barrier().get();
+		} catch (ExecutionException e) {
+			// barrier itself never fails
+		}
+	}
+
+	/**
+	 * Commits pending mutations and stops the writer thread.
+	 * Mutations queued afterwards are rejected.
+	 */
+	public void shutdown() throws InterruptedException {
+		flush();
+		mShutdown = true;
+		mWriter.interrupt();
+		mWriter.join();
+	}
+
+	private <V> Future<V> enqueue(Mutation<V> mutation) {
+		if (mShutdown)
+			throw new IllegalStateException("Queue is shut down");
+		try {
+			mQueue.put(mutation);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			mutation.cancel(false);
+		}
+		return mutation;
+	}
+
+	private void drain() {
+		List<Mutation<?>> batch = new ArrayList<Mutation<?>>(mMaxBatchSize);
+		while (!mShutdown) {
+			try {
+				Mutation<?> first = mQueue.take();
+				batch.add(first);
+				long deadline = System.nanoTime()
+						+ TimeUnit.MILLISECONDS.toNanos(mMaxDelayMillis);
+				boolean barrier = first.mBarrier;
+				while (!barrier && batch.size() < mMaxBatchSize) {
+					long remaining = deadline - System.nanoTime();
+					Mutation<?> next = remaining > 0 ? 
+							mQueue.poll(remaining, TimeUnit.NANOSECONDS) : 
+							mQueue.poll();
+					if (next == null)
+						break;
+					batch.add(next);
+					barrier = next.mBarrier;
+				}
+			} catch (InterruptedException e) {
+				// Mutations already taken are committed before stopping, or
+				// their futures would never complete.
+			}
+			commit(batch);
+			batch.clear();
+		}
+
+		// Reject mutations left behind by a racing enqueue.
+		Mutation<?> left;
+		while ((left = mQueue.poll()) != null)
+			left.cancel(false);
+	}
+
+	private void commit(List<Mutation<?>> batch) {
+		if (batch.isEmpty())
+			return;
+		try {
+			mManager.beginTransaction();
+			try {
+				for (Mutation<?> mutation : batch)
+					mutation.run();
+				mManager.getDatabase().setTransactionSuccessful();
+			} finally {
+				mManager.endTransaction();
+			}
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Group commit failed : " + e.getMessage(), e);
+			for (Mutation<?> mutation : batch)
+				mutation.fail(e);
+			return;
+		}
+		for (Mutation<?> mutation : batch)
+			mutation.complete();
+	}
+
+	/*
+	 * Queued mutation and its future. Result is held back until the batch
+	 * is committed.
+	 */
+	private static abstract class Mutation<V> implements Future<V> {
+		private final boolean mBarrier;
+		private final CountDownLatch mDone = new CountDownLatch(1);
+		private volatile V mResult;
+		private volatile Throwable mError;
+		private volatile boolean mCancelled;
+		private boolean mStarted;
+
+		Mutation(boolean barrier) {
+			mBarrier = barrier;
+		}
+
+		abstract V apply();
+
+		/*
+		 * A failed statement is rolled back alone by SQLite, so other
+		 * mutations of the batch still commit.
+		 */
+		void run() {
+			synchronized (this) {
+				if (mCancelled)
+					return;
+				mStarted = true;
+			}
+			try {
+				mResult = apply();
+			} catch (SQLException e) {
+				mError = e;
+			}
+		}
+
+		void complete() {
+			mDone.countDown();
+		}
+
+		void fail(Throwable error) {
+			if (mCancelled)
+				return;
+			mError = error;
+			mDone.countDown();
+		}
+
+		/*
+		 * Only mutations still waiting in the queue can be cancelled.
+		 */
+		@Override
+		public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+			if (mStarted || isDone())
+				return false;
+			mCancelled = true;
+			mDone.countDown();
+			return true;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return mCancelled;
+		}
+
+		@Override
+		public boolean isDone() {
+			return mDone.getCount() == 0;
+		}
+
+		@Override
+		public V get() throws InterruptedException, ExecutionException {
+			mDone.await();
+			return result();
+		}
+
+		@Override
+		public V get(long timeout, TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+			if (!mDone.await(timeout, unit))
+				throw new TimeoutException();
+			return result();
+		}
+
+		private V result() throws ExecutionException {
+			if (mCancelled)
+				throw new CancellationException();
+			if (mError != null)
+				throw new ExecutionException(mError);
+			return mResult;
+		}
+	}
+}
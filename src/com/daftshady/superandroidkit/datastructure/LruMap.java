@@ -0,0 +1,155 @@
+package com.daftshady.superandroidkit.datastructure;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thread-safe map bounded by total size of its values, evicting least
+ * recently used entries first. Size of each entry is given by `sizeOf`,
+ * which is 1 by default so that the bound is a number of entries.
+ * Keeps hit, miss and eviction counters.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class LruMap<K, V> {
+
+	private final LinkedHashMap<K, V> mMap;
+
+	private final long mMaxSize;
+
+	private long mSize;
+
+	private long mHitCount;
+
+	private long mMissCount;
+
+	private long mEvictionCount;
+
+	public LruMap(long maxSize) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("Max size should be positive");
+		mMaxSize = maxSize;
+		mMap = new LinkedHashMap<K, V>(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns size of an entry in the unit of `maxSize`.
+	 */
+	protected long sizeOf(K key, V value) {
+		return 1;
+	}
+
+	/**
+	 * Called when an entry is evicted to make room, outside of the lock.
+	 */
+	protected void onEvicted(K key, V value) {}
+
+	public V get(K key) {
+		synchronized (this) {
+			V value = mMap.get(key);
+			if (value != null)
+				mHitCount++;
+			else
+				mMissCount++;
+			return value;
+		}
+	}
+
+	/**
+	 * Puts an entry and evicts least recently used entries over the bound.
+	 * An entry larger than the bound itself is not stored.
+	 * @return
+	 * 		Previous value of `key`.
+	 */
+	public V put(K key, V value) {
+		if (key == null || value == null)
+			throw new IllegalArgumentException("Key and value cannot be null");
+
+		V previous;
+		List<Map.Entry<K, V>> evicted;
+		synchronized (this) {
+			long size = sizeOf(key, value);
+			previous = mMap.remove(key);
+			if (previous != null)
+				mSize -= sizeOf(key, previous);
+			if (size > mMaxSize)
+				return previous;
+			mMap.put(key, value);
+			mSize += size;
+			evicted = trim();
+		}
+		notifyEvicted(evicted);
+		return previous;
+	}
+
+	public V remove(K key) {
+		synchronized (this) {
+			V previous = mMap.remove(key);
+			if (previous != null)
+				mSize -= sizeOf(key, previous);
+			return previous;
+		}
+	}
+
+	/**
+	 * Returns keys from least to most recently used.
+	 */
+	public synchronized List<K> keys() {
+		return new ArrayList<K>(mMap.keySet());
+	}
+
+	public synchronized void clear() {
+		mMap.clear();
+		mSize = 0;
+	}
+
+	public synchronized long size() {
+		return mSize;
+	}
+
+	public long maxSize() {
+		return mMaxSize;
+	}
+
+	public synchronized int count() {
+		return mMap.size();
+	}
+
+	public synchronized long hitCount() {
+		return mHitCount;
+	}
+
+	public synchronized long missCount() {
+		return mMissCount;
+	}
+
+	public synchronized long evictionCount() {
+		return mEvictionCount;
+	}
+
+	private List<Map.Entry<K, V>> trim() {
+		List<Map.Entry<K, V>> evicted = null;
+		Iterator<Map.Entry<K, V>> iterator = mMap.entrySet().iterator();
+		while (mSize > mMaxSize && iterator.hasNext()) {
+			Map.Entry<K, V> eldest = iterator.next();
+			iterator.remove();
+			mSize -= sizeOf(eldest.getKey(), eldest.getValue());
+			mEvictionCount++;
+			if (evicted == null)
+				evicted = new ArrayList<Map.Entry<K, V>>();
+			evicted.add(eldest);
+		}
+		return evicted;
+	}
+
+	private void notifyEvicted(List<Map.Entry<K, V>> evicted) {
+		if (evicted == null)
+			return;
+		for (Map.Entry<K, V> entry : evicted)
+			onEvicted(entry.getKey(), entry.getValue());
+	}
+}
@@ -0,0 +1,183 @@
+package com.daftshady.superandroidkit.datastructure;
+
+/**
+ * Growable arrays of primitive values, which store values without boxing.
+ * Capacity grows by half when full.
+ *
+ */
+public abstract class PrimitiveBuffer {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	protected int mSize;
+
+	public int size() {
+		return mSize;
+	}
+
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	public void clear() {
+		mSize = 0;
+	}
+
+	protected void checkIndex(int index) {
+		if (index < 0 || index >= mSize)
+			throw new IndexOutOfBoundsException(
+					"Index " + index + " out of size " + mSize);
+	}
+
+	protected static int grownCapacity(int capacity, int required) {
+		int grown = capacity + (capacity >> 1) + 1;
+		return Math.max(grown, required);
+	}
+
+	public static class OfLong extends PrimitiveBuffer {
+		private long[] mValues;
+
+		public OfLong() {
+			this(DEFAULT_CAPACITY);
+		}
+
+		public OfLong(int capacity) {
+			mValues = new long[capacity];
+		}
+
+		public void add(long value) {
+			if (mSize == mValues.length)
+				ensureCapacity(mSize + 1);
+			mValues[mSize++] = value;
+		}
+
+		public long get(int index) {
+			checkIndex(index);
+			return mValues[index];
+		}
+
+		public void set(int index, long value) {
+			checkIndex(index);
+			mValues[index] = value;
+		}
+
+		public void ensureCapacity(int capacity) {
+			if (capacity <= mValues.length)
+				return;
+			long[] values = new long[grownCapacity(mValues.length, capacity)];
+			System.arraycopy(mValues, 0, values, 0, mSize);
+			mValues = values;
+		}
+
+		/**
+		 * Returns backing array. Only the first `size()` values are valid.
+		 */
+		public long[] array() {
+			return mValues;
+		}
+
+		public long[] toArray() {
+			long[] values = new long[mSize];
+			System.arraycopy(mValues, 0, values, 0, mSize);
+			return values;
+		}
+	}
+
+	public static class OfInt extends PrimitiveBuffer {
+		private int[] mValues;
+
+		public OfInt() {
+			this(DEFAULT_CAPACITY);
+		}
+
+		public OfInt(int capacity) {
+			mValues = new int[capacity];
+		}
+
+		public void add(int value) {
+			if (mSize == mValues.length)
+				ensureCapacity(mSize + 1);
+			mValues[mSize++] = value;
+		}
+
+		public int get(int index) {
+			checkIndex(index);
+			return mValues[index];
+		}
+
+		public void set(int index, int value) {
+			checkIndex(index);
+			mValues[index] = value;
+		}
+
+		public void ensureCapacity(int capacity) {
+			if (capacity <= mValues.length)
+				return;
+			int[] values = new int[grownCapacity(mValues.length, capacity)];
+			System.arraycopy(mValues, 0, values, 0, mSize);
+			mValues = values;
+		}
+
+		/**
+		 * Returns backing array. Only the first `size()` values are valid.
+		 */
+		public int[] array() {
+			return mValues;
+		}
+
+		public int[] toArray() {
+			int[] values = new int[mSize];
+			System.arraycopy(mValues, 0, values, 0, mSize);
+			return values;
+		}
+	}
+
+	public static class OfDouble extends PrimitiveBuffer {
+		private double[] mValues;
+
+		public OfDouble() {
+			this(DEFAULT_CAPACITY);
+		}
+
+		public OfDouble(int capacity) {
+			mValues = new double[capacity];
+		}
+
+		public void add(double value) {
+			if (mSize == mValues.length)
+				ensureCapacity(mSize + 1);
+			mValues[mSize++] = value;
+		}
+
+		public double get(int index) {
+			checkIndex(index);
+			return mValues[index];
+		}
+
+		public void set(int index, double value) {
+			checkIndex(index);
+			mValues[index] = value;
+		}
+
+		public void ensureCapacity(int capacity) {
+			if (capacity <= mValues.length)
+				return;
+			double[] values = new double[grownCapacity(mValues.length, capacity)];
+			System.arraycopy(mValues, 0, values, 0, mSize);
+			mValues = values;
+		}
+
+		/**
+		 * Returns backing array. Only the first `size()` values are valid.
+		 */
+		public double[] array() {
+			return mValues;
+		}
+
+		public double[] toArray() {
+			double[] values = new double[mSize];
+			System.arraycopy(mValues, 0, values, 0, mSize);
+			return values;
+		}
+	}
+}
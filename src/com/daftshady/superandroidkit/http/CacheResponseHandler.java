@@ -0,0 +1,125 @@
+package com.daftshady.superandroidkit.http;
+
+import org.apache.http.Header;
+
+import com.loopj.android.http.AsyncHttpResponseHandler;
+
+/**
+ * CacheResponseHandler
+ * Handler of a `GET` request through `HttpCache`. Serves the cached
+ * response on `304 Not Modified`, and forwards every callback to the
+ * handler of the caller. The result of the network call is stored once
+ * per call through `store`, by the handler of the caller which started it.
+ * Should be created on the thread of the caller's handler, so that
+ * callbacks are delivered on it.
+ *
+ */
+class CacheResponseHandler extends AsyncHttpResponseHandler {
+
+	private final HttpCache mCache;
+
+	private final String mKey;
+
+	private final AsyncHttpResponseHandler mTarget;
+
+	private volatile CachedResponse mStale;
+
+	CacheResponseHandler(HttpCache cache, String key, AsyncHttpResponseHandler target) {
+		mCache = cache;
+		mKey = key;
+		mTarget = target;
+	}
+
+	/**
+	 * Sets cached response being revalidated by this request.
+	 */
+	void setStale(CachedResponse stale) {
+		mStale = stale;
+	}
+
+	/**
+	 * Delivers `response` to the caller's handler without request.
+	 */
+	static void deliver(AsyncHttpResponseHandler target, CachedResponse response) {
+		// Body is copied so that callers can't alter the cached one.
+		byte[] body = response.getBody().clone();
+		target.sendStartMessage();
+		if (target instanceof SimpleHttpResponse)
+			((SimpleHttpResponse) target).sendCachedSuccessMessage(
+					200, response.getHeaders(), body);
+		else
+			target.sendSuccessMessage(200, response.getHeaders(), body);
+		target.sendFinishMessage();
+	}
+
+	/**
+	 * Stores the result of the network call and records it as a hit if it
+	 * revalidated the cached response, or as a miss otherwise. Called once
+	 * per call, on the network thread.
+	 */
+	void store(int statusCode, Header[] headers, byte[] responseBody) {
+		CachedResponse stale = mStale;
+		final CachedResponse response;
+		if (statusCode == 304 && stale != null) {
+			response = stale.revalidate(headers, System.currentTimeMillis());
+			mCache.recordHit(true);
+		} else if (statusCode == 200) {
+			response = CachedResponse.fromResponse(
+					headers, responseBody, System.currentTimeMillis());
+			mCache.recordMiss();
+		} else {
+			mCache.recordMiss();
+			return;
+		}
+		mCache.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (response != null)
+					mCache.put(mKey, response);
+				else
+					mCache.remove(mKey);
+			}
+		});
+	}
+
+	@Override
+	public void onStart() {
+		mTarget.onStart();
+	}
+
+	@Override
+	public void onFinish() {
+		mTarget.onFinish();
+	}
+
+	@Override
+	public void onProgress(int bytesWritten, int totalSize) {
+		mTarget.onProgress(bytesWritten, totalSize);
+	}
+
+	@Override
+	public void onRetry() {
+		mTarget.onRetry();
+	}
+
+	@Override
+	public void onSuccess(int statusCode, Header[] headers, byte[] responseBody) {
+		mTarget.onSuccess(statusCode, headers, responseBody);
+	}
+
+	@Override
+	public void onFailure(int statusCode, Header[] headers, 
+			byte[] responseBody, Throwable error) {
+		CachedResponse stale = mStale;
+		if (statusCode == 304 && stale != null) {
+			byte[] body = stale.getBody().clone();
+			Header[] merged = stale.mergeHeaders(headers);
+			if (mTarget instanceof SimpleHttpResponse)
+				((SimpleHttpResponse) mTarget).onCachedSuccess(200, merged, body);
+			else
+				mTarget.onSuccess(200, merged, body);
+			return;
+		}
+		mTarget.onFailure(statusCode, headers, responseBody, error);
+	}
+}
@@ -0,0 +1,283 @@
+package com.daftshady.superandroidkit.http;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * CachedResponse
+ * Body and headers of a cached `GET` response, with freshness and
+ * validators taken from its `Cache-Control`, `Expires`, `Date`, `Age`,
+ * `ETag` and `Last-Modified` headers.
+ *
+ */
+final class CachedResponse {
+
+	private static final int FORMAT_VERSION = 1;
+
+	private final String[] mHeaderNames;
+
+	private final String[] mHeaderValues;
+
+	private final byte[] mBody;
+
+	private final long mExpires;
+
+	private final String mETag;
+
+	private final String mLastModified;
+
+	private CachedResponse(String[] headerNames, String[] headerValues,
+			byte[] body, long expires, String eTag, String lastModified) {
+		mHeaderNames = headerNames;
+		mHeaderValues = headerValues;
+		mBody = body;
+		mExpires = expires;
+		mETag = eTag;
+		mLastModified = lastModified;
+	}
+
+	/**
+	 * Returns cache entry of response, or null if the response may not be
+	 * stored or could never be served from cache.
+	 */
+	static CachedResponse fromResponse(Header[] headers, byte[] body, long now) {
+		if (headers == null)
+			headers = new Header[0];
+		long expires = getExpires(headers, now);
+		if (expires == Long.MIN_VALUE)
+			return null;
+		String eTag = getHeader(headers, "ETag");
+		String lastModified = getHeader(headers, "Last-Modified");
+		if (expires <= now && eTag == null && lastModified == null)
+			return null;
+
+		String[] names = new String[headers.length];
+		String[] values = new String[headers.length];
+		for (int i = 0; i < headers.length; i++) {
+			names[i] = headers[i].getName();
+			values[i] = headers[i].getValue();
+		}
+		// Copied, as `body` is also delivered to a caller which may alter it.
+		return new CachedResponse(names, values, 
+				body != null ? body.clone() : new byte[0],
+				expires, eTag, lastModified);
+	}
+
+	/**
+	 * Returns this entry refreshed by headers of a `304 Not Modified`
+	 * response, or null if those headers forbid storing it. Freshness is
+	 * computed from the headers merged by `mergeHeaders`, which are stored.
+	 */
+	CachedResponse revalidate(Header[] headers, long now) {
+		Header[] merged = mergeHeaders(headers);
+		long expires = getExpires(merged, now);
+		if (expires == Long.MIN_VALUE)
+			return null;
+		String[] names = new String[merged.length];
+		String[] values = new String[merged.length];
+		for (int i = 0; i < merged.length; i++) {
+			names[i] = merged[i].getName();
+			values[i] = merged[i].getValue();
+		}
+		return new CachedResponse(names, values, mBody, expires,
+				getHeader(merged, "ETag"), getHeader(merged, "Last-Modified"));
+	}
+
+	/**
+	 * Returns stored headers updated by headers of a `304 Not Modified`
+	 * response, which replace stored headers of the same name. `Age` of
+	 * the stored response is dropped, as it no longer applies, and
+	 * `Content-Length` is kept, as it describes the stored body.
+	 */
+	Header[] mergeHeaders(Header[] headers) {
+		if (headers == null)
+			headers = new Header[0];
+		List<Header> merged = new ArrayList<Header>(mHeaderNames.length + headers.length);
+		for (int i = 0; i < mHeaderNames.length; i++) {
+			String name = mHeaderNames[i];
+			if (!"Age".equalsIgnoreCase(name) 
+					&& (getHeader(headers, name) == null 
+							|| "Content-Length".equalsIgnoreCase(name)))
+				merged.add(new BasicHeader(name, mHeaderValues[i]));
+		}
+		for (Header header : headers) {
+			if (!"Content-Length".equalsIgnoreCase(header.getName()))
+				merged.add(header);
+		}
+		return merged.toArray(new Header[merged.size()]);
+	}
+
+	boolean isFresh(long now) {
+		return now < mExpires;
+	}
+
+	byte[] getBody() {
+		return mBody;
+	}
+
+	Header[] getHeaders() {
+		Header[] headers = new Header[mHeaderNames.length];
+		for (int i = 0; i < headers.length; i++)
+			headers[i] = new BasicHeader(mHeaderNames[i], mHeaderValues[i]);
+		return headers;
+	}
+
+	/**
+	 * Returns conditional request headers validating this entry.
+	 */
+	Header[] getValidationHeaders() {
+		List<Header> headers = new ArrayList<Header>(2);
+		if (mETag != null)
+			headers.add(new BasicHeader("If-None-Match", mETag));
+		if (mLastModified != null)
+			headers.add(new BasicHeader("If-Modified-Since", mLastModified));
+		return headers.toArray(new Header[headers.size()]);
+	}
+
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(FORMAT_VERSION);
+		out.writeLong(mExpires);
+		writeNullable(out, mETag);
+		writeNullable(out, mLastModified);
+		out.writeInt(mHeaderNames.length);
+		for (int i = 0; i < mHeaderNames.length; i++) {
+			out.writeUTF(mHeaderNames[i]);
+			out.writeUTF(mHeaderValues[i]);
+		}
+		out.writeInt(mBody.length);
+		out.write(mBody);
+	}
+
+	static CachedResponse readFrom(DataInputStream in) throws IOException {
+		if (in.readInt() != FORMAT_VERSION)
+			throw new IOException("Unknown cache entry version");
+		long expires = in.readLong();
+		String eTag = readNullable(in);
+		String lastModified = readNullable(in);
+		int headerCount = in.readInt();
+		String[] names = new String[headerCount];
+		String[] values = new String[headerCount];
+		for (int i = 0; i < headerCount; i++) {
+			names[i] = in.readUTF();
+			values[i] = in.readUTF();
+		}
+		byte[] body = new byte[in.readInt()];
+		in.readFully(body);
+		return new CachedResponse(names, values, body, expires, eTag, lastModified);
+	}
+
+	/*
+	 * Returns expiry time in milliseconds, Long.MIN_VALUE if the response
+	 * should not be stored, or `now` if it should always be revalidated.
+	 * Every `Cache-Control` directive is read first, as `no-store` and
+	 * `no-cache` win over `max-age` wherever they appear. Freshness lifetime
+	 * is `max-age`, or `Expires` relative to `Date`, and the age of the
+	 * response already spent in caches on the way is taken from it.
+	 */
+	private static long getExpires(Header[] headers, long now) {
+		boolean noCache = false;
+		long maxAge = -1;
+		String cacheControl = getHeader(headers, "Cache-Control");
+		if (cacheControl != null) {
+			for (String directive : cacheControl.split(",")) {
+				directive = directive.trim().toLowerCase(Locale.US);
+				if (directive.equals("no-store"))
+					return Long.MIN_VALUE;
+				if (directive.equals("no-cache")) {
+					noCache = true;
+				} else if (directive.startsWith("max-age=") && maxAge < 0) {
+					maxAge = parseSeconds(directive.substring(8));
+					// Invalid max-age means already expired.
+					if (maxAge < 0)
+						noCache = true;
+				}
+			}
+		}
+		if (noCache)
+			return now;
+
+		long date = parseDate(getHeader(headers, "Date"));
+		long lifetime;
+		if (maxAge >= 0) {
+			lifetime = maxAge;
+		} else {
+			String expires = getHeader(headers, "Expires");
+			if (expires == null)
+				return now;
+			long expiresTime = parseDate(expires);
+			// Invalid date means already expired.
+			if (expiresTime == -1)
+				return now;
+			lifetime = expiresTime - (date != -1 ? date : now);
+		}
+
+		long age = date != -1 ? Math.max(0, now - date) : 0;
+		long ageValue = parseSeconds(getHeader(headers, "Age"));
+		if (ageValue > age)
+			age = ageValue;
+		return lifetime > age ? now + (lifetime - age) : now;
+	}
+
+	/*
+	 * Returns delta seconds of a header in milliseconds, or -1 if it is
+	 * missing or invalid.
+	 */
+	private static long parseSeconds(String value) {
+		if (value == null)
+			return -1;
+		try {
+			long seconds = Long.parseLong(value.trim());
+			if (seconds < 0)
+				return -1;
+			return Math.min(seconds, Integer.MAX_VALUE) * 1000;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/*
+	 * Returns time of an HTTP date in milliseconds, or -1 if it is missing
+	 * or invalid.
+	 */
+	private static long parseDate(String value) {
+		if (value == null)
+			return -1;
+		SimpleDateFormat format = new SimpleDateFormat(
+				"EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		try {
+			return format.parse(value).getTime();
+		} catch (ParseException e) {
+			return -1;
+		}
+	}
+
+	private static String getHeader(Header[] headers, String name) {
+		for (Header header : headers) {
+			if (name.equalsIgnoreCase(header.getName()))
+				return header.getValue();
+		}
+		return null;
+	}
+
+	private static void writeNullable(DataOutputStream out, String value)
+			throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+
+	private static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
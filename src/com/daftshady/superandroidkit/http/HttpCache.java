@@ -0,0 +1,303 @@
+package com.daftshady.superandroidkit.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.util.Log;
+
+import com.daftshady.superandroidkit.datastructure.LruMap;
+
+/**
+ * HttpCache
+ * Response cache of `SimpleHttpClient.get`, with a disk tier bounded by
+ * total file size and a memory tier keeping small hot responses. Both
+ * evict least recently used responses first.
+ * Fresh responses are served without request. Stale responses with
+ * `ETag` or `Last-Modified` are revalidated with a conditional request,
+ * and served from cache on `304 Not Modified`.
+ * Disk is only accessed on the cache's own thread.
+ *
+ */
+public class HttpCache {
+
+	private final String TAG = "HttpCache";
+
+	/**
+	 * Largest body kept in the memory tier.
+	 */
+	public static final int MAX_MEMORY_ENTRY_SIZE = 64 * 1024;
+
+	private final File mDirectory;
+
+	private final LruMap<String, Long> mDiskIndex;
+
+	private final LruMap<String, CachedResponse> mMemory;
+
+	private final ExecutorService mExecutor = 
+			Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "HttpCache");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private boolean mIndexLoaded;
+
+	private long mHitCount;
+
+	private long mMissCount;
+
+	private long mRevalidationCount;
+
+	/**
+	 * @param directory
+	 * 		Directory only used by this cache.
+	 * @param maxDiskSize
+	 * 		Maximum bytes of cached responses on disk.
+	 * @param maxMemorySize
+	 * 		Maximum bytes of response bodies in memory.
+	 */
+	public HttpCache(File directory, long maxDiskSize, long maxMemorySize) {
+		mDirectory = directory;
+		mDiskIndex = new LruMap<String, Long>(maxDiskSize) {
+			@Override
+			protected long sizeOf(String key, Long value) {
+				return value;
+			}
+
+			@Override
+			protected void onEvicted(String key, Long value) {
+				getFile(key).delete();
+			}
+		};
+		mMemory = new LruMap<String, CachedResponse>(maxMemorySize) {
+			@Override
+			protected long sizeOf(String key, CachedResponse value) {
+				return value.getBody().length;
+			}
+		};
+	}
+
+	/**
+	 * Returns cache key of a request from its
+	 * `SimpleHttpClient.requestKey`.
+	 */
+	static String keyOf(String requestKey) {
+		String key = requestKey;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			byte[] hash = digest.digest(key.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for (byte b : hash)
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+						.append(Character.forDigit(b & 0xf, 16));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	void execute(Runnable runnable) {
+		mExecutor.execute(runnable);
+	}
+
+	/**
+	 * Returns cached response of `key` from memory, or from disk promoting
+	 * it to memory if small. Should be called on the cache thread.
+	 */
+	CachedResponse get(String key) {
+		CachedResponse response = mMemory.get(key);
+		if (response != null)
+			return response;
+
+		loadIndex();
+		if (mDiskIndex.get(key) == null)
+			return null;
+		File file = getFile(key);
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			response = CachedResponse.readFrom(in);
+		} catch (IOException e) {
+			Log.w(TAG, "Dropping unreadable cache entry : " + e.getMessage());
+			remove(key);
+			return null;
+		} finally {
+			closeQuietly(in);
+		}
+		file.setLastModified(System.currentTimeMillis());
+		if (response.getBody().length <= MAX_MEMORY_ENTRY_SIZE)
+			mMemory.put(key, response);
+		return response;
+	}
+
+	/**
+	 * Stores `response` of `key`. Should be called on the cache thread.
+	 */
+	void put(String key, CachedResponse response) {
+		if (response.getBody().length <= MAX_MEMORY_ENTRY_SIZE)
+			mMemory.put(key, response);
+		else
+			mMemory.remove(key);
+
+		loadIndex();
+		File file = getFile(key);
+		File temp = new File(mDirectory, file.getName() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)));
+			response.writeTo(out);
+			out.close();
+			out = null;
+			if (temp.length() > mDiskIndex.maxSize()) {
+				temp.delete();
+				remove(key);
+				return;
+			}
+			if (!temp.renameTo(file))
+				throw new IOException("Cannot rename " + temp);
+			mDiskIndex.put(key, file.length());
+		} catch (IOException e) {
+			Log.w(TAG, "Failed to write cache entry : " + e.getMessage());
+			closeQuietly(out);
+			temp.delete();
+			remove(key);
+		}
+	}
+
+	/**
+	 * Removes response of `key`. Should be called on the cache thread.
+	 */
+	void remove(String key) {
+		mMemory.remove(key);
+		mDiskIndex.remove(key);
+		getFile(key).delete();
+	}
+
+	/**
+	 * Removes every cached response. Memory is cleared at once and again
+	 * on the cache thread, after writes queued before the call.
+	 */
+	public void clear() {
+		mMemory.clear();
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				mMemory.clear();
+				loadIndex();
+				for (String key : mDiskIndex.keys())
+					remove(key);
+			}
+		});
+	}
+
+	synchronized void recordHit(boolean revalidated) {
+		mHitCount++;
+		if (revalidated)
+			mRevalidationCount++;
+	}
+
+	synchronized void recordMiss() {
+		mMissCount++;
+	}
+
+	/**
+	 * Returns number of requests served from cache, including
+	 * revalidated ones. Identical requests sharing one network call count
+	 * once.
+	 */
+	public synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * Returns number of network calls not answered by `304`, including
+	 * stale responses which were modified. Identical requests sharing one
+	 * network call count once.
+	 */
+	public synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * Returns number of network calls answered by `304`.
+	 */
+	public synchronized long getRevalidationCount() {
+		return mRevalidationCount;
+	}
+
+	public long getMemoryHitCount() {
+		return mMemory.hitCount();
+	}
+
+	public long getMemorySize() {
+		return mMemory.size();
+	}
+
+	public long getDiskSize() {
+		return mDiskIndex.size();
+	}
+
+	private File getFile(String key) {
+		return new File(mDirectory, key);
+	}
+
+	/*
+	 * Index is rebuilt from files, least recently used first, on first
+	 * disk access.
+	 */
+	private void loadIndex() {
+		if (mIndexLoaded)
+			return;
+		mIndexLoaded = true;
+		if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+			Log.w(TAG, "Cannot create cache directory " + mDirectory);
+			return;
+		}
+		File[] files = mDirectory.listFiles();
+		if (files == null)
+			return;
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long l = lhs.lastModified();
+				long r = rhs.lastModified();
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+		});
+		for (File file : files) {
+			if (file.getName().endsWith(".tmp"))
+				file.delete();
+			else
+				mDiskIndex.put(file.getName(), file.length());
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable == null)
+			return;
+		try {
+			closeable.close();
+		} catch (IOException e) {
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.daftshady.superandroidkit.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+
+import com.loopj.android.http.AsyncHttpClient;
+import com.loopj.android.http.AsyncHttpResponseHandler;
+import com.loopj.android.http.RequestHandle;
+import com.loopj.android.http.RequestParams;
+
+/**
+ * InFlightRequests
+ * Coalesces identical `GET` requests in flight into one network call.
+ * Each call has a shared handler which receives callbacks synchronously on
+ * the network thread and sends them to the handler of every caller, so
+ * that each caller gets them on its own thread. Each caller gets its own
+ * copy of the response body, and a call through `HttpCache` stores its
+ * result once.
+ *
+ */
+final class InFlightRequests {
+
+	static final Object LOCK = new Object();
+
+	private static final Map<String, Flight> sFlights = new HashMap<String, Flight>();
+
+	private InFlightRequests() {
+	}
+
+	/**
+	 * Attaches `handle` to the call of `key`, starting the call if none is
+	 * in flight.
+	 * @param key
+	 * 		Key of the request including its headers, or null to start a
+	 * 		call which is not shared.
+	 */
+	static void join(AsyncHttpClient client, String key, String url,
+			Header[] headers, RequestParams params, SimpleRequestHandle handle) {
+		Flight flight;
+		boolean start = false;
+		synchronized (LOCK) {
+			if (handle.isCancelled())
+				return;
+			flight = key != null ? sFlights.get(key) : null;
+			if (flight == null) {
+				AsyncHttpResponseHandler target = handle.getTarget();
+				flight = new Flight(key, target instanceof CacheResponseHandler ? 
+						(CacheResponseHandler) target : null);
+				if (key != null)
+					sFlights.put(key, flight);
+				start = true;
+			}
+			flight.mHandles.add(handle);
+			handle.setFlight(flight);
+		}
+		handle.getTarget().sendStartMessage();
+		if (!start)
+			return;
+
+		RequestHandle request = client.get(null, url, headers, params, flight);
+		boolean cancelled;
+		synchronized (LOCK) {
+			flight.mRequest = request;
+			cancelled = flight.mCancelled;
+		}
+		if (cancelled)
+			request.cancel(true);
+	}
+
+	/**
+	 * Shared handler of a call.
+	 */
+	static final class Flight extends AsyncHttpResponseHandler {
+
+		private final String mKey;
+
+		private final CacheResponseHandler mCacheHandler;
+
+		private final List<SimpleRequestHandle> mHandles = 
+				new ArrayList<SimpleRequestHandle>();
+
+		private RequestHandle mRequest;
+
+		private boolean mCancelled;
+
+		private boolean mDone;
+
+		/*
+		 * @param cacheHandler
+		 * 		Handler storing the result in `HttpCache`, or null. Callers
+		 * 		sharing the call have the same cache key and validators, so
+		 * 		the one of the caller starting the call stores it for all.
+		 */
+		Flight(String key, CacheResponseHandler cacheHandler) {
+			mKey = key;
+			mCacheHandler = cacheHandler;
+			setUseSynchronousMode(true);
+		}
+
+		/*
+		 * Detaches a cancelled caller, cancelling the call when no caller
+		 * is left.
+		 */
+		void detach(SimpleRequestHandle handle) {
+			RequestHandle request;
+			synchronized (LOCK) {
+				if (!mHandles.remove(handle) || !mHandles.isEmpty() || mDone)
+					return;
+				mCancelled = true;
+				mDone = true;
+				sFlights.remove(mKey);
+				request = mRequest;
+			}
+			if (request != null)
+				request.cancel(true);
+		}
+
+		private List<SimpleRequestHandle> getHandles() {
+			synchronized (LOCK) {
+				return new ArrayList<SimpleRequestHandle>(mHandles);
+			}
+		}
+
+		/*
+		 * Removes the call from flights so that requests made from now on
+		 * start a new call, and returns callers to deliver result to.
+		 */
+		private List<SimpleRequestHandle> finish() {
+			synchronized (LOCK) {
+				if (!mDone) {
+					mDone = true;
+					sFlights.remove(mKey);
+				}
+				List<SimpleRequestHandle> handles = 
+						new ArrayList<SimpleRequestHandle>(mHandles);
+				mHandles.clear();
+				return handles;
+			}
+		}
+
+		@Override
+		public void onStart() {
+			// Sent to each caller when it joins.
+		}
+
+		@Override
+		public void onFinish() {
+			// Sent to each caller with the result.
+		}
+
+		@Override
+		public void onProgress(int bytesWritten, int totalSize) {
+			for (SimpleRequestHandle handle : getHandles())
+				handle.getTarget().sendProgressMessage(bytesWritten, totalSize);
+		}
+
+		@Override
+		public void onRetry() {
+			for (SimpleRequestHandle handle : getHandles())
+				handle.getTarget().sendRetryMessage();
+		}
+
+		@Override
+		public void onSuccess(int statusCode, Header[] headers, byte[] responseBody) {
+			if (mCacheHandler != null)
+				mCacheHandler.store(statusCode, headers, responseBody);
+			List<SimpleRequestHandle> handles = finish();
+			for (int i = 0; i < handles.size(); i++) {
+				AsyncHttpResponseHandler target = handles.get(i).getTarget();
+				target.sendSuccessMessage(statusCode, headers, 
+						copyBody(responseBody, i));
+				target.sendFinishMessage();
+			}
+		}
+
+		@Override
+		public void onFailure(int statusCode, Header[] headers, 
+				byte[] responseBody, Throwable error) {
+			if (mCacheHandler != null)
+				mCacheHandler.store(statusCode, headers, responseBody);
+			List<SimpleRequestHandle> handles = finish();
+			for (int i = 0; i < handles.size(); i++) {
+				AsyncHttpResponseHandler target = handles.get(i).getTarget();
+				target.sendFailureMessage(statusCode, headers, 
+						copyBody(responseBody, i), error);
+				target.sendFinishMessage();
+			}
+		}
+
+		/*
+		 * The first caller gets the body itself, the others a copy, as
+		 * handlers may alter it.
+		 */
+		private static byte[] copyBody(byte[] body, int caller) {
+			return caller == 0 || body == null ? body : body.clone();
+		}
+	}
+}
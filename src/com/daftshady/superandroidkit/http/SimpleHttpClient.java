@@ -1,6 +1,17 @@
 package com.daftshady.superandroidkit.http;
 
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.NameValuePair;
 
 import org.apache.http.entity.ByteArrayEntity;
 import org.json.JSONObject;
@@ -22,6 +33,27 @@ public class SimpleHttpClient {
 
 	private static AsyncHttpClient asyncHttpClient = new AsyncHttpClient();
 
+	private static volatile HttpCache sCache;
+
+	private static final Comparator<NameValuePair> NAME_ORDER = 
+			new Comparator<NameValuePair>() {
+		@Override
+		public int compare(NameValuePair lhs, NameValuePair rhs) {
+			return lhs.getName().compareTo(rhs.getName());
+		}
+	};
+
+	/**
+	 * Sets response cache of `GET` requests, or disables it if null.
+	 */
+	public static void setCache(HttpCache cache) {
+		sCache = cache;
+	}
+
+	public static HttpCache getCache() {
+		return sCache;
+	}
+
 	/**
 	 * Send HTTP `GET` request to URL.
 	 * 
@@ -32,13 +64,119 @@ public class SimpleHttpClient {
 	 * @param responseHandler
 	 *            Async handler for HTTP response. If null, it will be replaced
 	 *            with empty handler.
+	 *            If cache is set, response may be served from it.
+	 * @return
+	 *            Handle to cancel the request. Identical requests in flight
+	 *            share one network call. Requests with file or stream
+	 *            parameters are neither shared nor cached.
 	 */
-	public static void get(
-			String url, RequestParams params, SimpleHttpResponse responseHandler) {
-		AsyncHttpResponseHandler handler = 
+	public static SimpleRequestHandle get(
+			final String url, final RequestParams params, 
+			SimpleHttpResponse responseHandler) {
+		final AsyncHttpResponseHandler handler = 
 				responseHandler != null ? 
 						responseHandler : new AsyncHttpResponseHandler();
-		asyncHttpClient.get(url, params, handler);
+		final String requestKey = requestKey(url, params);
+		final HttpCache cache = sCache;
+		if (cache == null || requestKey == null) {
+			SimpleRequestHandle handle = new SimpleRequestHandle(handler);
+			InFlightRequests.join(asyncHttpClient, requestKey,
+					url, null, params, handle);
+			return handle;
+		}
+
+		final String key = HttpCache.keyOf(requestKey);
+		final CacheResponseHandler cacheHandler = 
+				new CacheResponseHandler(cache, key, handler);
+		final SimpleRequestHandle handle = new SimpleRequestHandle(cacheHandler);
+		cache.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (handle.isCancelled())
+					return;
+				CachedResponse cached = cache.get(key);
+				if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+					cache.recordHit(false);
+					CacheResponseHandler.deliver(handler, cached);
+					return;
+				}
+				cacheHandler.setStale(cached);
+				Header[] headers = 
+						cached != null ? cached.getValidationHeaders() : null;
+				InFlightRequests.join(asyncHttpClient, 
+						flightKey(requestKey, headers), 
+						url, headers, params, handle);
+			}
+		});
+		return handle;
+	}
+
+	/**
+	 * Returns key identifying a `GET` request, or null if its parameters
+	 * can't be compared. Parameters are URL-encoded, so that delimiters in
+	 * names and values can't make distinct requests collide, and sorted by
+	 * name, keeping values of a repeated name in their order.
+	 * `RequestParams` doesn't expose its parameters, so they are read
+	 * through reflection. Null is returned for file or stream parameters,
+	 * or if reflection fails.
+	 */
+	static String requestKey(String url, RequestParams params) {
+		if (params == null)
+			return url;
+		List<NameValuePair> pairs;
+		try {
+			if (!isEmptyField(params, "fileParams") 
+					|| !isEmptyField(params, "streamParams"))
+				return null;
+			Method getParamsList = RequestParams.class.getDeclaredMethod("getParamsList");
+			getParamsList.setAccessible(true);
+			@SuppressWarnings("unchecked")
+			List<NameValuePair> list = (List<NameValuePair>) getParamsList.invoke(params);
+			pairs = new ArrayList<NameValuePair>(list);
+		} catch (Exception e) {
+			return null;
+		}
+		if (pairs.isEmpty())
+			return url;
+		// Stable, so values of a repeated name keep their order.
+		Collections.sort(pairs, NAME_ORDER);
+		StringBuilder key = new StringBuilder(url);
+		key.append('?');
+		try {
+			for (int i = 0; i < pairs.size(); i++) {
+				NameValuePair pair = pairs.get(i);
+				if (i > 0)
+					key.append('&');
+				key.append(URLEncoder.encode(pair.getName(), "UTF-8")).append('=');
+				if (pair.getValue() != null)
+					key.append(URLEncoder.encode(pair.getValue(), "UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return key.toString();
+	}
+
+	private static boolean isEmptyField(RequestParams params, String name) 
+			throws Exception {
+		Field field = RequestParams.class.getDeclaredField(name);
+		field.setAccessible(true);
+		Map<?, ?> map = (Map<?, ?>) field.get(params);
+		return map == null || map.isEmpty();
+	}
+
+	/*
+	 * Conditional requests only share calls of the same validators, since
+	 * `304` is only meaningful to callers holding the same response.
+	 */
+	private static String flightKey(String requestKey, Header[] headers) {
+		if (headers == null || headers.length == 0)
+			return requestKey;
+		StringBuilder key = new StringBuilder(requestKey);
+		for (Header header : headers)
+			key.append('\n').append(header.getName())
+					.append(": ").append(header.getValue());
+		return key.toString();
 	}
 
 	/**
@@ -4,6 +4,8 @@ import org.apache.http.Header;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import android.os.Message;
+
 import com.daftshady.superandroidkit.exception.SuperAndroidKitException;
 import com.loopj.android.http.AsyncHttpResponseHandler;
 
@@ -13,6 +15,57 @@ import com.loopj.android.http.AsyncHttpResponseHandler;
  *
  */
 public abstract class SimpleHttpResponse extends AsyncHttpResponseHandler {
+	
+	private static final int CACHED_SUCCESS_MESSAGE = 100;
+	
+	/*
+	 * Only set and read on the callback thread, for the delivery in
+	 * progress.
+	 */
+	private boolean mFromCache;
+	
+	/**
+	 * Returns true if the response being delivered was served from
+	 * `HttpCache`, including responses revalidated by `304 Not Modified`.
+	 * Should be called from `onSuccess`.
+	 */
+	public boolean isFromCache() {
+		return mFromCache;
+	}
+	
+	/*
+	 * Sends a response served from cache, delivered to `onSuccess` on the
+	 * callback thread like `sendSuccessMessage`.
+	 */
+	void sendCachedSuccessMessage(int statusCode, Header[] headers, byte[] responseBody) {
+		sendMessage(obtainMessage(CACHED_SUCCESS_MESSAGE, 
+				new Object[] {statusCode, headers, responseBody}));
+	}
+	
+	/*
+	 * Delivers a response served from cache. Should be called on the
+	 * callback thread.
+	 */
+	void onCachedSuccess(int statusCode, Header[] headers, byte[] responseBody) {
+		mFromCache = true;
+		try {
+			onSuccess(statusCode, headers, responseBody);
+		} finally {
+			mFromCache = false;
+		}
+	}
+	
+	@Override
+	protected void handleMessage(Message message) {
+		if (message.what != CACHED_SUCCESS_MESSAGE) {
+			super.handleMessage(message);
+			return;
+		}
+		Object[] response = (Object[]) message.obj;
+		onCachedSuccess((Integer) response[0], (Header[]) response[1], 
+				(byte[]) response[2]);
+	}
+	
 	@Override
 	public abstract void onSuccess(int statusCode, Header[] headers, byte[] responseBody);
 	
@@ -0,0 +1,59 @@
+package com.daftshady.superandroidkit.http;
+
+import com.loopj.android.http.AsyncHttpResponseHandler;
+
+/**
+ * SimpleRequestHandle
+ * Handle of a request sent by `SimpleHttpClient.get`. Identical requests
+ * in flight share one network call, so cancelling only detaches this
+ * caller. The call itself is cancelled when every caller sharing it has
+ * cancelled.
+ *
+ */
+public class SimpleRequestHandle {
+
+	private final AsyncHttpResponseHandler mTarget;
+
+	private boolean mCancelled;
+
+	private InFlightRequests.Flight mFlight;
+
+	SimpleRequestHandle(AsyncHttpResponseHandler target) {
+		mTarget = target;
+	}
+
+	AsyncHttpResponseHandler getTarget() {
+		return mTarget;
+	}
+
+	/**
+	 * Stops delivering callbacks of the request to this caller's handler.
+	 * @return
+	 * 		False if already cancelled.
+	 */
+	public boolean cancel() {
+		InFlightRequests.Flight flight;
+		synchronized (InFlightRequests.LOCK) {
+			if (mCancelled)
+				return false;
+			mCancelled = true;
+			flight = mFlight;
+		}
+		if (flight != null)
+			flight.detach(this);
+		return true;
+	}
+
+	public boolean isCancelled() {
+		synchronized (InFlightRequests.LOCK) {
+			return mCancelled;
+		}
+	}
+
+	/*
+	 * Guarded by `InFlightRequests.LOCK`.
+	 */
+	void setFlight(InFlightRequests.Flight flight) {
+		mFlight = flight;
+	}
+}